@@ -0,0 +1,76 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import java.awt.Rectangle;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures working out hitboxes and testing two entities for a collision
+ *
+ * @author Marcus Whybrow
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class EntityBenchmark {
+
+	/** The game holding the entities **/
+	private Game game;
+
+	/**
+	 * Create a game with the entities for the first level
+	 *
+	 */
+	@Setup
+	public void setup() {
+
+		game = new Game(1);
+	}
+
+	/**
+	 * The invaders hitbox, which only covers the lower half of its sprite
+	 *
+	 * @return The hitbox
+	 */
+	@Benchmark
+	public Rectangle invaderHitbox() {
+
+		return game.invader.getHitbox();
+	}
+
+	/**
+	 * The tanks hitbox, the plain sprite bounds from Entity
+	 *
+	 * @return The hitbox
+	 */
+	@Benchmark
+	public Rectangle tankHitbox() {
+
+		return game.tank.getHitbox();
+	}
+
+	/**
+	 * A collision test between two entities that do not touch
+	 *
+	 * @return The result of the test
+	 */
+	@Benchmark
+	public boolean collidesWith() {
+
+		return game.invader.collidesWith(game.tank);
+	}
+}
@@ -0,0 +1,112 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures whole frames of a game being played, the game logic step and the
+ * drawing of the stage into an offscreen image, together and apart. The
+ * invader is steered left and right by a script so the game moves through
+ * its levels as it would with a player.
+ *
+ * @author Marcus Whybrow
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class FrameBenchmark {
+
+	/** The time step of each frame, in milliseconds **/
+	private static final long STEP = 8;
+	/** The number of frames the invader steers one way before turning **/
+	private static final int TURN_FRAMES = 300;
+
+	/** The game being played **/
+	private Game game;
+	/** The image the stage is drawn into **/
+	private BufferedImage image;
+	/** The graphics context of the image **/
+	private Graphics2D g2;
+	/** The number of frames run so far **/
+	private long frames;
+
+	/**
+	 * Create a game that skips the start and stats screens, and an image the
+	 * size of the stage
+	 *
+	 */
+	@Setup(Level.Trial)
+	public void setup() {
+
+		game = new Game(1);
+		game.setAutoAdvance(true);
+
+		image = new BufferedImage(game.image.getWidth(null), game.image.getHeight(null), BufferedImage.TYPE_INT_RGB);
+		g2 = image.createGraphics();
+	}
+
+	/**
+	 * Release the graphics context and the keys held by the script
+	 *
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+
+		g2.dispose();
+		game.keyboard.setPressed(Keyboard.LEFT, false);
+		game.keyboard.setPressed(Keyboard.RIGHT, false);
+	}
+
+	/**
+	 * A game logic step and the drawing of the frame after it
+	 *
+	 */
+	@Benchmark
+	public void frame() {
+
+		update();
+		game.render(g2, 0.5);
+	}
+
+	/**
+	 * A game logic step alone
+	 *
+	 */
+	@Benchmark
+	public void update() {
+
+		boolean left = (frames++ / TURN_FRAMES) % 2 == 0;
+
+		game.keyboard.setPressed(Keyboard.LEFT, left);
+		game.keyboard.setPressed(Keyboard.RIGHT, !left);
+		game.update(STEP);
+	}
+
+	/**
+	 * Drawing a frame alone, of whatever the game was doing last
+	 *
+	 */
+	@Benchmark
+	public void render() {
+
+		game.render(g2, 0.5);
+	}
+}
@@ -0,0 +1,92 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures drawing a score into an offscreen image, either the same score
+ * every time or a score that changes before every draw
+ *
+ * @author Marcus Whybrow
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ScoreTextBenchmark {
+
+	/** True to change the score before every draw **/
+	@Param({"false", "true"})
+	public boolean changing;
+
+	/** The score being drawn **/
+	private ScoreText score;
+	/** The image drawn into **/
+	private BufferedImage image;
+	/** The graphics context of the image **/
+	private Graphics2D g2;
+	/** The snapshot the score is added to before it is drawn **/
+	private FrameSnapshot frame = new FrameSnapshot();
+
+	/**
+	 * Create the score and the image to draw it into
+	 *
+	 */
+	@Setup
+	public void setup() {
+
+		Game game = new Game(1);
+		score = game.currentScore;
+		score.setScore(123456);
+
+		image = new BufferedImage(game.image.getWidth(null), game.image.getHeight(null), BufferedImage.TYPE_INT_RGB);
+		g2 = image.createGraphics();
+		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+	}
+
+	/**
+	 * Release the graphics context
+	 *
+	 */
+	@TearDown
+	public void tearDown() {
+
+		g2.dispose();
+	}
+
+	/**
+	 * Draw the score
+	 *
+	 * @return The score drawn
+	 */
+	@Benchmark
+	public long draw() {
+
+		if(changing) {
+			score.update(1);
+		}
+
+		frame.clear(0, 0, 1);
+		score.snapshot(frame);
+		frame.draw(g2, 0, frame.size(), 1);
+		return score.getScore();
+	}
+}
@@ -0,0 +1,97 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures moving every live shell by one game logic step. Shells that leave
+ * the top of the stage are replaced by new ones fired from the bottom, so the
+ * number of live shells stays the same.
+ *
+ * @author Marcus Whybrow
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ShellBenchmark {
+
+	/** The time step to move the shells by, in milliseconds **/
+	private static final long STEP = 8;
+
+	/** The number of live shells **/
+	@Param({"10", "100", "1000", "10000"})
+	public int shells;
+
+	/** The widest angle a shell is fired at, in degrees either side **/
+	@Param({"0", "45"})
+	public int spread;
+
+	/** The game the shells are in **/
+	private Game game;
+	/** Chooses where and at what angle to fire replacement shells **/
+	private GameRandom random = new GameRandom(1);
+
+	/**
+	 * Create a game and fill it with shells spread over the stage
+	 *
+	 */
+	@Setup
+	public void setup() {
+
+		game = new Game(1);
+		game.status = Game.LEVEL_IN_PROGRESS;
+
+		int height = game.image.getHeight(null);
+
+		for(int i = 0; i < shells; i++) {
+			fire(random.nextInt(height));
+		}
+	}
+
+	/**
+	 * Move all shells one step
+	 *
+	 * @return The number of live shells
+	 */
+	@Benchmark
+	public int move() {
+
+		game.shells.move(STEP);
+
+		//Top the shells back up
+
+		int height = game.image.getHeight(null);
+
+		while(game.shells.size() < shells) {
+			fire(height);
+		}
+
+		return game.shells.size();
+	}
+
+	/**
+	 * Fire a shell at a random horizontal position and angle
+	 *
+	 * @param y The vertical position to fire from
+	 */
+	private void fire(int y) {
+
+		double angle = (spread == 0) ? 0 : (random.nextDouble() * 2 - 1) * spread * Math.PI / 180;
+		game.shells.fire(game.tank, random.nextInt(game.image.getWidth(null)), y, angle);
+	}
+}
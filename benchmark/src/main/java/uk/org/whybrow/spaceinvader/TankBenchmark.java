@@ -0,0 +1,84 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a single tank move in each of its fire modes. The fire mode is
+ * forced before every move and the shells fired are cleared after it, so
+ * every move does the work of its fire mode.
+ *
+ * @author Marcus Whybrow
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class TankBenchmark {
+
+	/** The time step to move the tank by, in milliseconds **/
+	private static final long STEP = 8;
+
+	/** The fire mode to move the tank in **/
+	@Param({"NORMAL", "BURST", "ARRAY"})
+	public String mode;
+
+	/** The game the tank is in **/
+	private Game game;
+	/** The fire mode constant for the mode parameter **/
+	private int fireMode;
+
+	/**
+	 * Create a fresh game for each iteration, so power ups dropped by the tank
+	 * do not build up
+	 *
+	 */
+	@Setup(Level.Iteration)
+	public void setup() {
+
+		game = new Game(1);
+		game.status = Game.LEVEL_IN_PROGRESS;
+
+		if(mode.equals("BURST")) {
+			fireMode = TankEntity.BURST;
+		} else if(mode.equals("ARRAY")) {
+			fireMode = TankEntity.ARRAY;
+		} else {
+			fireMode = TankEntity.NORMAL;
+		}
+	}
+
+	/**
+	 * Move the tank one step in the fire mode
+	 *
+	 * @return The number of shells the move fired
+	 */
+	@Benchmark
+	public int move() {
+
+		game.time += STEP;
+		game.tank.setFireMode(fireMode);
+		game.tank.move(STEP);
+		game.tank.commit();
+
+		int fired = game.shells.size();
+		game.shells.clear();
+		game.entities.flush();
+		return fired;
+	}
+}
@@ -0,0 +1,255 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import java.io.File;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Decodes every sprite the game might use before it is needed, so that no
+ * sprite is decoded part way through a level.
+ *
+ * All images under a resource directory are found, whether the game is run
+ * from a directory of classes or from a jar, and decoded through the
+ * SpriteCache on a small pool of background threads, largest first. Anything
+ * that asks the SpriteCache for an image while it is being decoded waits for
+ * it rather than decoding it again, so the game can be set up while the
+ * loader is still running and only waits for the images it needs straight
+ * away.
+ *
+ * The progress can be checked while loading, and getReady() gives a Future
+ * that completes once every image has been decoded.
+ *
+ * @author Marcus Whybrow
+ */
+public class AssetLoader {
+
+	/** The file endings of images that can be decoded **/
+	private static final String[] IMAGE_TYPES = {".png", ".gif", ".jpg"};
+	/** The most threads to decode with **/
+	private static final int MAX_THREADS = 4;
+
+	/** The resource paths of every image to decode **/
+	private ArrayList <String>refs = new ArrayList();
+	/** The size of each image file, for decoding the largest first **/
+	private ArrayList <Long>sizes = new ArrayList();
+	/** The number of images decoded so far **/
+	private AtomicInteger loaded = new AtomicInteger();
+	/** Completes once every image has been decoded **/
+	private FutureTask<Void> ready = new FutureTask<Void>(new Callable<Void>() {
+		public Void call() {
+			return null;
+		}
+	});
+
+	/**
+	 * Find every image under a resource directory
+	 *
+	 * @param dir The resource directory, such as "sprites/"
+	 */
+	public AssetLoader(String dir) {
+
+		if(!dir.endsWith("/")) {
+			dir += "/";
+		}
+
+		try {
+			URL url = AssetLoader.class.getClassLoader().getResource(dir);
+
+			if(url == null) {
+				System.err.println("Could not find assets: " + dir);
+			} else if(url.getProtocol().equals("jar")) {
+				listJar(((JarURLConnection) url.openConnection()).getJarFile(), dir);
+			} else {
+				listDirectory(new File(url.toURI()), dir);
+			}
+		} catch(Exception e) {
+			System.err.println("Could not list assets: " + dir);
+		}
+	}
+
+	/**
+	 * Start decoding every image in the background
+	 *
+	 * @return This loader
+	 */
+	public AssetLoader start() {
+
+		if(refs.isEmpty()) {
+			ready.run();
+			return this;
+		}
+
+		//Decode the largest images first, they take the longest
+
+		Integer[] order = new Integer[refs.size()];
+
+		for(int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return sizes.get(b).compareTo(sizes.get(a));
+			}
+		});
+
+		int threads = Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+		ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private int count = 0;
+
+			public synchronized Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Asset Loader " + (++count));
+				thread.setDaemon(true);
+				thread.setPriority(Thread.NORM_PRIORITY - 1);
+				return thread;
+			}
+		});
+
+		for(int i = 0; i < order.length; i++) {
+
+			final String ref = refs.get(order[i]);
+
+			pool.execute(new Runnable() {
+				public void run() {
+					SpriteCache.get(ref);
+
+					if(loaded.incrementAndGet() == refs.size()) {
+						ready.run();
+					}
+				}
+			});
+		}
+
+		//Let the threads end once everything has been decoded
+
+		pool.shutdown();
+		return this;
+	}
+
+	/**
+	 * Get a Future that completes once every image has been decoded
+	 *
+	 * @return The future
+	 */
+	public Future<Void> getReady() {
+
+		return ready;
+	}
+
+	/**
+	 * Check whether every image has been decoded
+	 *
+	 * @return True once loading has finished
+	 */
+	public boolean isReady() {
+
+		return ready.isDone();
+	}
+
+	/**
+	 * Get the number of images decoded so far
+	 *
+	 * @return The number decoded
+	 */
+	public int getLoaded() {
+
+		return loaded.get();
+	}
+
+	/**
+	 * Get the number of images to decode
+	 *
+	 * @return The number of images
+	 */
+	public int getTotal() {
+
+		return refs.size();
+	}
+
+	/**
+	 * Get how far through loading the images are
+	 *
+	 * @return From 0 to 1
+	 */
+	public double getProgress() {
+
+		return refs.isEmpty() ? 1 : (double) loaded.get() / refs.size();
+	}
+
+	/**
+	 * Add every image in a directory and those below it
+	 *
+	 * @param directory The directory
+	 * @param dir The resource path of the directory, ending with a slash
+	 */
+	private void listDirectory(File directory, String dir) {
+
+		File[] files = directory.listFiles();
+
+		if(files == null) {
+			return;
+		}
+
+		for(int i = 0; i < files.length; i++) {
+			if(files[i].isDirectory()) {
+				listDirectory(files[i], dir + files[i].getName() + "/");
+			} else if(isImage(files[i].getName())) {
+				refs.add(dir + files[i].getName());
+				sizes.add(files[i].length());
+			}
+		}
+	}
+
+	/**
+	 * Add every image in a jar under a directory
+	 *
+	 * @param jar The jar
+	 * @param dir The resource path of the directory, ending with a slash
+	 */
+	private void listJar(JarFile jar, String dir) {
+
+		Enumeration<JarEntry> entries = jar.entries();
+
+		while(entries.hasMoreElements()) {
+			JarEntry entry = entries.nextElement();
+
+			if(entry.getName().startsWith(dir) && !entry.isDirectory() && isImage(entry.getName())) {
+				refs.add(entry.getName());
+				sizes.add(entry.getSize());
+			}
+		}
+	}
+
+	/**
+	 * Check whether a file is an image that can be decoded
+	 *
+	 * @param name The name of the file
+	 * @return True if it is an image
+	 */
+	private static boolean isImage(String name) {
+
+		String lower = name.toLowerCase();
+
+		for(int i = 0; i < IMAGE_TYPES.length; i++) {
+			if(lower.endsWith(IMAGE_TYPES[i])) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,704 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Plays many headless games at once to see how hard the game is, for
+ * balancing the difficulty without having to play it.
+ *
+ * A trial is one combination of difficulty settings played by one invader
+ * policy. Every trial plays the same number of games, with the same seeds,
+ * so trials differ only in their settings and policy. Each game runs until a
+ * number of levels have been completed or a number of steps have been run,
+ * whichever comes first. Games run on every core, one game per thread, as
+ * each game keeps its state to itself.
+ *
+ * The report has one line per level of each trial, plus one for the whole
+ * game, as comma separated values written as soon as every game in the trial
+ * has finished, so a long sweep can be looked at while it runs. For each
+ * level it gives how many games reached and completed it, how many
+ * completed it without being hit, the share of the tanks shells that hit,
+ * and the spread of the score, bonus and time taken.
+ *
+ * @author Marcus Whybrow
+ */
+public class BatchRunner {
+
+	/** The names of the difficulty settings swept, in the order given **/
+	private ArrayList <String>names = new ArrayList();
+	/** The values each setting is swept over **/
+	private ArrayList <double[]>values = new ArrayList();
+	/** The invader policies each combination of settings is played by **/
+	private String[] policies = InvaderPolicy.NAMES;
+
+	/** The number of games played in each trial **/
+	private int games = 100;
+	/** The most game logic steps each game is run for **/
+	private long ticks = 75000;
+	/** The number of levels after which a game stops **/
+	private int levels = 10;
+	/** The seed of the first game in each trial, the rest follow on from it **/
+	private long seed = 1;
+	/** The number of games played at once **/
+	private int threads = Runtime.getRuntime().availableProcessors();
+	/** Where the report is written **/
+	private PrintStream out = System.out;
+
+	/**
+	 * Sweep a difficulty setting over some values, every combination of the
+	 * swept settings is a trial
+	 *
+	 * @param name The name of the setting, as in Difficulty
+	 * @param settingValues The values to try
+	 * @throws IllegalArgumentException If there is no such setting
+	 */
+	public void sweep(String name, double[] settingValues) {
+
+		new Difficulty().set(name, settingValues[0]);
+
+		names.add(name);
+		values.add(settingValues);
+	}
+
+	/**
+	 * Set the invader policies each combination of settings is played by
+	 *
+	 * @param policies The names of the policies, as in InvaderPolicy
+	 * @throws IllegalArgumentException If there is no such policy
+	 */
+	public void setPolicies(String[] policies) {
+
+		for(int i = 0; i < policies.length; i++) {
+			InvaderPolicy.create(policies[i], 0);
+		}
+
+		this.policies = policies;
+	}
+
+	/**
+	 * Set the number of games played in each trial
+	 *
+	 * @param games The number of games
+	 */
+	public void setGames(int games) {
+
+		this.games = Math.max(1, games);
+	}
+
+	/**
+	 * Set the most game logic steps each game is run for
+	 *
+	 * @param ticks The number of steps
+	 */
+	public void setTicks(long ticks) {
+
+		this.ticks = ticks;
+	}
+
+	/**
+	 * Set the number of levels after which a game stops
+	 *
+	 * @param levels The number of levels
+	 */
+	public void setLevels(int levels) {
+
+		this.levels = Math.max(1, levels);
+	}
+
+	/**
+	 * Set the seed of the first game in each trial
+	 *
+	 * @param seed The seed
+	 */
+	public void setSeed(long seed) {
+
+		this.seed = seed;
+	}
+
+	/**
+	 * Set the number of games played at once
+	 *
+	 * @param threads The number of threads
+	 */
+	public void setThreads(int threads) {
+
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Set where the report is written
+	 *
+	 * @param out The stream to write to
+	 */
+	public void setOutput(PrintStream out) {
+
+		this.out = out;
+	}
+
+	/**
+	 * Play every game of every trial and write the report
+	 *
+	 * @throws InterruptedException If interrupted while waiting for games
+	 * @throws ExecutionException If a game failed
+	 */
+	public void run() throws InterruptedException, ExecutionException {
+
+		//Every combination of the swept settings, for every policy
+
+		int combinations = 1;
+
+		for(int i = 0; i < values.size(); i++) {
+			combinations *= values.get(i).length;
+		}
+
+		final Trial[] trials = new Trial[combinations * policies.length];
+
+		for(int i = 0; i < trials.length; i++) {
+			trials[i] = new Trial(i, policies[i % policies.length]);
+		}
+
+		writeHeader();
+
+		//Queue every game, the games of each trial are queued together so
+		//trials finish and are reported in roughly the order they were queued
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		CompletionService <GameResult>done = new ExecutorCompletionService(pool);
+
+		try {
+			for(int i = 0; i < trials.length; i++) {
+				for(int j = 0; j < games; j++) {
+
+					final Trial trial = trials[i];
+					final long gameSeed = seed + j;
+
+					done.submit(new Callable<GameResult>() {
+						public GameResult call() {
+							return play(trial, gameSeed);
+						}
+					});
+				}
+			}
+
+			for(int i = 0; i < trials.length * games; i++) {
+
+				GameResult result = done.take().get();
+				Trial trial = result.trial;
+
+				trial.add(result);
+
+				if(trial.finished == games) {
+					trial.write();
+					trials[trial.index] = null;
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+			out.flush();
+		}
+	}
+
+	/**
+	 * Play a single game of a trial
+	 *
+	 * @param trial The trial the game is in
+	 * @param gameSeed The seed of the game
+	 * @return What happened in each level
+	 */
+	private GameResult play(Trial trial, long gameSeed) {
+
+		Game game = new Game(gameSeed, trial.difficulty);
+		game.setAutoAdvance(true);
+		game.scheduler.setThreads(1);
+
+		InvaderPolicy policy = InvaderPolicy.create(trial.policy, new GameRandom(gameSeed).nextLong());
+		GameResult result = new GameResult(trial, levels);
+
+		int status = game.status;
+		long started = 0;
+		long hits = 0;
+		long fired = 0;
+
+		for(long i = 0; i < ticks && result.completed < levels; i++) {
+
+			policy.press(game);
+			game.update(game.getStep());
+
+			if(game.status == status) {
+				continue;
+			}
+
+			status = game.status;
+
+			//Note when each level starts and what happened once it is over
+
+			if(status == Game.LEVEL_IN_PROGRESS) {
+				started = game.getTime();
+				hits = game.metrics.getHitsTaken();
+				fired = game.metrics.getShellsFired();
+				result.reached++;
+			} else if(status == Game.LEVEL_COMPLETE) {
+				int level = result.reached - 1;
+
+				result.hits[level] = game.metrics.getHitsTaken() - hits;
+				result.fired[level] = game.metrics.getShellsFired() - fired;
+				result.score[level] = game.levelScore;
+				result.bonus[level] = game.getBonus();
+				result.time[level] = game.getTime() - started;
+				result.completed++;
+			}
+		}
+
+		//Count the hits and shells of a level still being played
+
+		if(result.reached > result.completed) {
+			int level = result.reached - 1;
+
+			result.hits[level] = game.metrics.getHitsTaken() - hits;
+			result.fired[level] = game.metrics.getShellsFired() - fired;
+		}
+
+		result.finalScore = game.currentScore.getScore();
+		result.finalTime = game.getTime();
+
+		return result;
+	}
+
+	/**
+	 * Write the column names of the report
+	 *
+	 */
+	private void writeHeader() {
+
+		StringBuilder line = new StringBuilder("trial,policy");
+
+		for(int i = 0; i < names.size(); i++) {
+			line.append(',').append(names.get(i));
+		}
+
+		line.append(",level,games,reached,completed,perfect,hit_rate,hits_mean,score_p10,score_p50,score_p90,score_mean,bonus_p50,bonus_mean,time_p50_ms");
+		out.println(line);
+	}
+
+	/**
+	 * Write a number without a fraction if it is whole
+	 *
+	 * @param line The line to write to
+	 * @param value The number
+	 */
+	private static void number(StringBuilder line, double value) {
+
+		if(value == Math.rint(value) && Math.abs(value) < Long.MAX_VALUE) {
+			line.append((long) value);
+		} else {
+			line.append(Math.round(value * 10000) / 10000.0);
+		}
+	}
+
+	/**
+	 * Read the values of a setting to sweep, either listed with commas or as
+	 * a range from:to:step, which includes both ends
+	 *
+	 * @param text The values
+	 * @return The values
+	 */
+	private static double[] parseValues(String text) {
+
+		String[] range = text.split(":");
+
+		if(range.length == 3) {
+			double from = Double.parseDouble(range[0]);
+			double to = Double.parseDouble(range[1]);
+			double step = Double.parseDouble(range[2]);
+
+			if(step <= 0 || to < from) {
+				throw new IllegalArgumentException("Bad range " + text);
+			}
+
+			double[] parsed = new double[(int) Math.floor((to - from) / step + 1e-9) + 1];
+
+			for(int i = 0; i < parsed.length; i++) {
+				parsed[i] = from + i * step;
+			}
+			return parsed;
+		}
+
+		String[] listed = text.split(",");
+		double[] parsed = new double[listed.length];
+
+		for(int i = 0; i < listed.length; i++) {
+			parsed[i] = Double.parseDouble(listed[i]);
+		}
+		return parsed;
+	}
+
+	/**
+	 * Runs a sweep. The optional arguments are
+	 *
+	 * -games count     the number of games in each trial, 100 by default
+	 * -ticks count     the most time steps each game runs for, 75000 by
+	 *                  default, ten minutes of play
+	 * -levels count    stop each game after this many levels, 10 by default
+	 * -policy names    the invader policies to play with, separated by
+	 *                  commas, every policy by default
+	 * -seed seed       the seed of the first game in each trial
+	 * -threads count   play this many games at once, every core by default
+	 * -set name=values sweep a difficulty setting over values separated by
+	 *                  commas, or a range from:to:step, can be given more
+	 *                  than once to sweep every combination
+	 * -out file        write the report to a file rather than the console
+	 *
+	 * @param args The optional arguments
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+
+		System.setProperty("java.awt.headless", "true");
+
+		BatchRunner runner = new BatchRunner();
+
+		try {
+			for(int i = 0; i < args.length; i += 2) {
+				if(i + 1 == args.length) {
+					throw new IllegalArgumentException("Expected a value after " + args[i]);
+				} else if(args[i].equals("-games")) {
+					runner.setGames(Integer.parseInt(args[i + 1]));
+				} else if(args[i].equals("-ticks")) {
+					runner.setTicks(Long.parseLong(args[i + 1]));
+				} else if(args[i].equals("-levels")) {
+					runner.setLevels(Integer.parseInt(args[i + 1]));
+				} else if(args[i].equals("-policy")) {
+					runner.setPolicies(args[i + 1].split(","));
+				} else if(args[i].equals("-seed")) {
+					runner.setSeed(Long.parseLong(args[i + 1]));
+				} else if(args[i].equals("-threads")) {
+					runner.setThreads(Integer.parseInt(args[i + 1]));
+				} else if(args[i].equals("-set")) {
+					String[] setting = args[i + 1].split("=", 2);
+					if(setting.length != 2) {
+						throw new IllegalArgumentException("Expected name=values, not " + args[i + 1]);
+					}
+					runner.sweep(setting[0], parseValues(setting[1]));
+				} else if(args[i].equals("-out")) {
+					runner.setOutput(new PrintStream(new FileOutputStream(args[i + 1]), false));
+				} else {
+					throw new IllegalArgumentException("Unknown argument " + args[i]);
+				}
+			}
+		} catch(IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+
+		long started = System.nanoTime();
+		runner.run();
+		double seconds = (System.nanoTime() - started) / 1000000000.0;
+
+		System.err.println("Finished in " + seconds + "s");
+	}
+
+	/**
+	 * One combination of settings played by one policy, and the tally of
+	 * every game played in it so far
+	 *
+	 */
+	private class Trial {
+
+		/** The number of the trial **/
+		private int index;
+		/** The settings played with **/
+		private Difficulty difficulty;
+		/** The values of the swept settings **/
+		private double[] settings;
+		/** The policy played by **/
+		private String policy;
+
+		/** The number of games finished **/
+		private int finished = 0;
+		/** The tally of each level, created when the first game finishes **/
+		private LevelTally[] tallies;
+		/** The tally of whole games **/
+		private LevelTally total;
+
+		/**
+		 * Create a trial, the trials for each combination of settings follow
+		 * on from each other, one for each policy
+		 *
+		 * @param index The number of the trial
+		 * @param policy The policy played by
+		 */
+		public Trial(int index, String policy) {
+
+			this.index = index;
+			this.policy = policy;
+
+			//Work out the value of each swept setting, the last setting
+			//changes from one combination to the next
+
+			difficulty = new Difficulty();
+			settings = new double[names.size()];
+
+			int combination = index / policies.length;
+
+			for(int i = values.size() - 1; i >= 0; i--) {
+				double[] settingValues = values.get(i);
+				settings[i] = settingValues[combination % settingValues.length];
+				difficulty.set(names.get(i), settings[i]);
+				combination /= settingValues.length;
+			}
+		}
+
+		/**
+		 * Add a finished game to the tally
+		 *
+		 * @param result What happened in the game
+		 */
+		public void add(GameResult result) {
+
+			if(tallies == null) {
+				tallies = new LevelTally[levels];
+				for(int i = 0; i < levels; i++) {
+					tallies[i] = new LevelTally();
+				}
+				total = new LevelTally();
+			}
+
+			long hits = 0, fired = 0, bonus = 0, perfect = 0;
+
+			for(int i = 0; i < result.reached; i++) {
+
+				LevelTally tally = tallies[i];
+				tally.reached++;
+				tally.hits += result.hits[i];
+				tally.fired += result.fired[i];
+
+				if(i < result.completed) {
+					tally.completed++;
+					tally.score.add(result.score[i]);
+					tally.bonus.add(result.bonus[i]);
+					tally.time.add(result.time[i]);
+
+					if(result.hits[i] == 0) {
+						tally.perfect++;
+						perfect++;
+					}
+
+					bonus += result.bonus[i];
+				}
+
+				hits += result.hits[i];
+				fired += result.fired[i];
+			}
+
+			total.reached++;
+			total.completed += result.completed;
+			total.perfect += perfect;
+			total.hits += hits;
+			total.fired += fired;
+			total.score.add(result.finalScore);
+			total.bonus.add(bonus);
+			total.time.add(result.finalTime);
+
+			finished++;
+		}
+
+		/**
+		 * Write the report lines of the trial
+		 *
+		 */
+		public void write() {
+
+			for(int i = 0; i < levels; i++) {
+				write(String.valueOf(i + 1), tallies[i]);
+			}
+
+			write("all", total);
+		}
+
+		/**
+		 * Write a single report line
+		 *
+		 * @param level The level the line is for
+		 * @param tally The tally of the level
+		 */
+		private void write(String level, LevelTally tally) {
+
+			StringBuilder line = new StringBuilder();
+
+			line.append(index).append(',').append(policy);
+
+			for(int i = 0; i < settings.length; i++) {
+				line.append(',');
+				number(line, settings[i]);
+			}
+
+			line.append(',').append(level);
+			line.append(',').append(games);
+			line.append(',').append(tally.reached);
+			line.append(',').append(tally.completed);
+			line.append(',').append(tally.perfect);
+			line.append(','); number(line, tally.fired == 0 ? 0 : (double) tally.hits / tally.fired);
+			line.append(','); number(line, tally.reached == 0 ? 0 : (double) tally.hits / tally.reached);
+			line.append(','); number(line, tally.score.percentile(10));
+			line.append(','); number(line, tally.score.percentile(50));
+			line.append(','); number(line, tally.score.percentile(90));
+			line.append(','); number(line, tally.score.mean());
+			line.append(','); number(line, tally.bonus.percentile(50));
+			line.append(','); number(line, tally.bonus.mean());
+			line.append(','); number(line, tally.time.percentile(50));
+
+			out.println(line);
+		}
+	}
+
+	/**
+	 * What happened in each level of one game
+	 *
+	 */
+	private static class GameResult {
+
+		/** The trial the game was in **/
+		private Trial trial;
+		/** The number of levels started **/
+		private int reached = 0;
+		/** The number of levels completed **/
+		private int completed = 0;
+		/** The shells that hit the invader in each level **/
+		private long[] hits;
+		/** The shells fired in each level **/
+		private long[] fired;
+		/** The score made in each level completed **/
+		private long[] score;
+		/** The bonus given for each level completed **/
+		private long[] bonus;
+		/** The game time each level completed took, in milliseconds **/
+		private long[] time;
+		/** The total score at the end of the game **/
+		private long finalScore;
+		/** The game time played, in milliseconds **/
+		private long finalTime;
+
+		/**
+		 * Create an empty result
+		 *
+		 * @param trial The trial the game is in
+		 * @param levels The most levels the game can reach
+		 */
+		public GameResult(Trial trial, int levels) {
+
+			this.trial = trial;
+
+			hits = new long[levels];
+			fired = new long[levels];
+			score = new long[levels];
+			bonus = new long[levels];
+			time = new long[levels];
+		}
+	}
+
+	/**
+	 * The tally of one level over every game in a trial
+	 *
+	 */
+	private static class LevelTally {
+
+		/** The number of games that reached the level **/
+		private int reached = 0;
+		/** The number of games that completed the level **/
+		private int completed = 0;
+		/** The number of games that completed the level without being hit **/
+		private int perfect = 0;
+		/** The shells that hit the invader **/
+		private long hits = 0;
+		/** The shells fired **/
+		private long fired = 0;
+		/** The score made in the level **/
+		private Sample score = new Sample();
+		/** The bonus given for the level **/
+		private Sample bonus = new Sample();
+		/** The game time the level took **/
+		private Sample time = new Sample();
+	}
+
+	/**
+	 * Every value of something measured once per game, for working out its
+	 * spread
+	 *
+	 */
+	private static class Sample {
+
+		/** The values, only the first count are used **/
+		private long[] values = new long[16];
+		/** The number of values **/
+		private int count = 0;
+		/** True if the values are in order **/
+		private boolean sorted = true;
+
+		/**
+		 * Add a value
+		 *
+		 * @param value The value
+		 */
+		public void add(long value) {
+
+			if(count == values.length) {
+				values = Arrays.copyOf(values, count * 2);
+			}
+
+			values[count++] = value;
+			sorted = false;
+		}
+
+		/**
+		 * Get the value a percentage of the values are at or below
+		 *
+		 * @param percent The percentage, 0 to 100
+		 * @return The value, 0 if there are none
+		 */
+		public long percentile(double percent) {
+
+			if(count == 0) {
+				return 0;
+			}
+
+			if(!sorted) {
+				Arrays.sort(values, 0, count);
+				sorted = true;
+			}
+
+			int rank = (int) Math.ceil(percent / 100 * count) - 1;
+			return values[Math.max(0, Math.min(count - 1, rank))];
+		}
+
+		/**
+		 * Get the mean of the values
+		 *
+		 * @return The mean, 0 if there are none
+		 */
+		public double mean() {
+
+			if(count == 0) {
+				return 0;
+			}
+
+			double sum = 0;
+
+			for(int i = 0; i < count; i++) {
+				sum += values[i];
+			}
+
+			return sum / count;
+		}
+	}
+}
@@ -0,0 +1,20 @@
+
+package uk.org.whybrow.spaceinvader;
+
+/**
+ * Anything registered with the CollisionGrid. A single collidable can own
+ * many boxes in the grid, each registered with its own index, so that one
+ * object can stand for a whole group of projectiles.
+ *
+ * @author Marcus Whybrow
+ */
+public interface Collidable {
+
+	/**
+	 * Notification that one of this objects boxes overlaps an entity
+	 *
+	 * @param index The index the overlapping box was registered with
+	 * @param other The entity it overlaps
+	 */
+	public void collided(int index, Entity other);
+}
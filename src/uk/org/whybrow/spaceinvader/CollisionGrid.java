@@ -0,0 +1,376 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import java.awt.Rectangle;
+
+/**
+ * A broad phase for collision checks. The stage is split into square cells
+ * and every collidable box is listed in each cell it touches, so checking a
+ * hitbox only has to look at the boxes in the few cells it touches rather
+ * than every box on the stage.
+ *
+ * Boxes are registered once and then updated as they move. The bounds given
+ * on each update are kept, so checks never ask an entity for its hitbox
+ * again, and a box is only moved between cells when the cells it touches
+ * actually change. Boxes off the edge of the stage are kept in the edge
+ * cells.
+ *
+ * Each registered box is known by a proxy number, which stays the same until
+ * the box is removed. The grid holds everything in arrays which are reused,
+ * so registering, moving and checking boxes does not allocate once the
+ * arrays have grown large enough.
+ *
+ * @author Marcus Whybrow
+ */
+public class CollisionGrid {
+
+	/** The width and height of each cell in pixels **/
+	private int cellSize;
+	/** The number of cells across **/
+	private int columns;
+	/** The number of cells down **/
+	private int rows;
+
+	/** The proxies listed in each cell **/
+	private int[][] cells;
+	/** The number of proxies listed in each cell **/
+	private int[] cellCount;
+
+	/** The number of proxy slots in use or freed **/
+	private int proxyCount = 0;
+	/** The owner of each proxy, null if the proxy is free **/
+	private Collidable[] owner = new Collidable[16];
+	/** The index each proxy was registered with by its owner **/
+	private int[] index = new int[16];
+	/** The bounds of each proxy **/
+	private int[] minX = new int[16], minY = new int[16], maxX = new int[16], maxY = new int[16];
+	/** The range of cells each proxy is listed in **/
+	private int[] cellX0 = new int[16], cellY0 = new int[16], cellX1 = new int[16], cellY1 = new int[16];
+	/** The last check each proxy was seen in, so it is only tested once **/
+	private int[] stamp = new int[16];
+
+	/** Proxies that have been removed and can be reused **/
+	private int[] free = new int[16];
+	/** The number of free proxies **/
+	private int freeCount = 0;
+
+	/** Counts checks so that each can mark the proxies it has seen **/
+	private int checkNumber = 0;
+	/** The proxies found to overlap in the current check **/
+	private int[] hits = new int[16];
+
+	/**
+	 * Create a grid covering the stage
+	 *
+	 * @param width The width of the stage
+	 * @param height The height of the stage
+	 * @param cellSize The width and height of each cell
+	 */
+	public CollisionGrid(int width, int height, int cellSize) {
+
+		this.cellSize = cellSize;
+		columns = Math.max(1, (width + cellSize - 1) / cellSize);
+		rows = Math.max(1, (height + cellSize - 1) / cellSize);
+
+		cells = new int[columns * rows][4];
+		cellCount = new int[columns * rows];
+	}
+
+	/**
+	 * Register a box with the grid
+	 *
+	 * @param collidable The object to tell when the box is hit
+	 * @param i The index to tell the object the box was registered with
+	 * @param bounds The current bounds of the box
+	 * @return The proxy number to update and remove the box with
+	 */
+	public int add(Collidable collidable, int i, Rectangle bounds) {
+
+		int proxy;
+
+		if(freeCount > 0) {
+			proxy = free[--freeCount];
+		} else {
+			if(proxyCount == owner.length) {
+				growProxies();
+			}
+			proxy = proxyCount++;
+		}
+
+		owner[proxy] = collidable;
+		index[proxy] = i;
+		setBounds(proxy, bounds);
+
+		cellX0[proxy] = cellX(minX[proxy]);
+		cellY0[proxy] = cellY(minY[proxy]);
+		cellX1[proxy] = cellX(maxX[proxy]);
+		cellY1[proxy] = cellY(maxY[proxy]);
+		insert(proxy);
+
+		return proxy;
+	}
+
+	/**
+	 * Move a box to new bounds
+	 *
+	 * @param proxy The proxy number of the box
+	 * @param bounds The new bounds of the box
+	 */
+	public void update(int proxy, Rectangle bounds) {
+
+		setBounds(proxy, bounds);
+
+		int x0 = cellX(minX[proxy]), y0 = cellY(minY[proxy]);
+		int x1 = cellX(maxX[proxy]), y1 = cellY(maxY[proxy]);
+
+		//Only relist the box if it touches different cells
+
+		if(x0 != cellX0[proxy] || y0 != cellY0[proxy] || x1 != cellX1[proxy] || y1 != cellY1[proxy]) {
+			extract(proxy);
+
+			cellX0[proxy] = x0;
+			cellY0[proxy] = y0;
+			cellX1[proxy] = x1;
+			cellY1[proxy] = y1;
+			insert(proxy);
+		}
+	}
+
+	/**
+	 * Change the index a box reports to its owner, for owners that move their
+	 * boxes around in their own storage
+	 *
+	 * @param proxy The proxy number of the box
+	 * @param i The new index
+	 */
+	public void setIndex(int proxy, int i) {
+
+		index[proxy] = i;
+	}
+
+	/**
+	 * Remove a box from the grid, its proxy number may be reused
+	 *
+	 * @param proxy The proxy number of the box
+	 */
+	public void remove(int proxy) {
+
+		if(owner[proxy] == null) {
+			return;
+		}
+
+		extract(proxy);
+		owner[proxy] = null;
+
+		if(freeCount == free.length) {
+			int[] grown = new int[free.length * 2];
+			System.arraycopy(free, 0, grown, 0, freeCount);
+			free = grown;
+		}
+		free[freeCount++] = proxy;
+	}
+
+	/**
+	 * Remove every box from the grid
+	 *
+	 */
+	public void clear() {
+
+		for(int i = 0; i < cellCount.length; i++) {
+			cellCount[i] = 0;
+		}
+
+		for(int i = 0; i < proxyCount; i++) {
+			owner[i] = null;
+		}
+
+		proxyCount = 0;
+		freeCount = 0;
+	}
+
+	/**
+	 * Find every box that overlaps an entities hitbox and tell its owner.
+	 * Owners may add, move or remove boxes when told, boxes removed before
+	 * their owner is told are skipped.
+	 *
+	 * @param box The hitbox to check
+	 * @param other The entity the hitbox belongs to
+	 * @return The number of boxes that were tested against the hitbox
+	 */
+	public int check(Rectangle box, Entity other) {
+
+		int x0 = cellX(box.x), y0 = cellY(box.y);
+		int x1 = cellX(box.x + box.width), y1 = cellY(box.y + box.height);
+		int tested = 0;
+		int hitCount = 0;
+
+		checkNumber++;
+
+		//Gather the overlapping boxes first, as owners may change the grid
+
+		for(int cy = y0; cy <= y1; cy++) {
+			for(int cx = x0; cx <= x1; cx++) {
+
+				int cell = cy * columns + cx;
+				int[] items = cells[cell];
+
+				for(int i = 0; i < cellCount[cell]; i++) {
+
+					int proxy = items[i];
+
+					if(stamp[proxy] == checkNumber) {
+						continue;
+					}
+
+					stamp[proxy] = checkNumber;
+					tested++;
+
+					if(minX[proxy] < box.x + box.width && box.x < maxX[proxy] &&
+							minY[proxy] < box.y + box.height && box.y < maxY[proxy]) {
+
+						if(hitCount == hits.length) {
+							int[] grown = new int[hits.length * 2];
+							System.arraycopy(hits, 0, grown, 0, hitCount);
+							hits = grown;
+						}
+						hits[hitCount++] = proxy;
+					}
+				}
+			}
+		}
+
+		//Tell the owners
+
+		for(int i = 0; i < hitCount; i++) {
+			Collidable collidable = owner[hits[i]];
+
+			if(collidable != null) {
+				collidable.collided(index[hits[i]], other);
+			}
+		}
+
+		return tested;
+	}
+
+	/**
+	 * Keep the bounds of a box, as the corners of the box
+	 *
+	 * @param proxy The proxy number of the box
+	 * @param bounds The bounds of the box
+	 */
+	private void setBounds(int proxy, Rectangle bounds) {
+
+		minX[proxy] = bounds.x;
+		minY[proxy] = bounds.y;
+		maxX[proxy] = bounds.x + bounds.width;
+		maxY[proxy] = bounds.y + bounds.height;
+	}
+
+	/**
+	 * List a box in every cell in its cell range
+	 *
+	 * @param proxy The proxy number of the box
+	 */
+	private void insert(int proxy) {
+
+		for(int cy = cellY0[proxy]; cy <= cellY1[proxy]; cy++) {
+			for(int cx = cellX0[proxy]; cx <= cellX1[proxy]; cx++) {
+
+				int cell = cy * columns + cx;
+
+				if(cellCount[cell] == cells[cell].length) {
+					int[] grown = new int[cells[cell].length * 2];
+					System.arraycopy(cells[cell], 0, grown, 0, cellCount[cell]);
+					cells[cell] = grown;
+				}
+				cells[cell][cellCount[cell]++] = proxy;
+			}
+		}
+	}
+
+	/**
+	 * Take a box out of every cell in its cell range, by moving the last box
+	 * in each cell into its place
+	 *
+	 * @param proxy The proxy number of the box
+	 */
+	private void extract(int proxy) {
+
+		for(int cy = cellY0[proxy]; cy <= cellY1[proxy]; cy++) {
+			for(int cx = cellX0[proxy]; cx <= cellX1[proxy]; cx++) {
+
+				int cell = cy * columns + cx;
+				int[] items = cells[cell];
+
+				for(int i = 0; i < cellCount[cell]; i++) {
+					if(items[i] == proxy) {
+						items[i] = items[--cellCount[cell]];
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the column a horizontal position is in, clamped to the grid
+	 *
+	 * @param x The horizontal position
+	 * @return The column
+	 */
+	private int cellX(int x) {
+
+		int cx = x / cellSize;
+		return (x < 0) ? 0 : (cx >= columns) ? columns - 1 : cx;
+	}
+
+	/**
+	 * Get the row a vertical position is in, clamped to the grid
+	 *
+	 * @param y The vertical position
+	 * @return The row
+	 */
+	private int cellY(int y) {
+
+		int cy = y / cellSize;
+		return (y < 0) ? 0 : (cy >= rows) ? rows - 1 : cy;
+	}
+
+	/**
+	 * Double the size of all of the arrays held per proxy
+	 *
+	 */
+	private void growProxies() {
+
+		int size = owner.length * 2;
+
+		Collidable[] grownOwner = new Collidable[size];
+		System.arraycopy(owner, 0, grownOwner, 0, proxyCount);
+		owner = grownOwner;
+
+		index = grow(index, size);
+		minX = grow(minX, size);
+		minY = grow(minY, size);
+		maxX = grow(maxX, size);
+		maxY = grow(maxY, size);
+		cellX0 = grow(cellX0, size);
+		cellY0 = grow(cellY0, size);
+		cellX1 = grow(cellX1, size);
+		cellY1 = grow(cellY1, size);
+		stamp = grow(stamp, size);
+	}
+
+	/**
+	 * Copy an array into a larger one
+	 *
+	 * @param array The array to copy
+	 * @param size The size of the new array
+	 * @return The larger array
+	 */
+	private int[] grow(int[] array, int size) {
+
+		int[] grown = new int[size];
+		System.arraycopy(array, 0, grown, 0, proxyCount);
+		return grown;
+	}
+}
@@ -0,0 +1,270 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import java.awt.Image;
+import java.awt.Rectangle;
+
+/**
+ * Holds the state every entity has in common, position, velocity, hitbox and
+ * sprite, in arrays of primitives with one row per entity. An entity object
+ * is only a view of its row, plus whatever state is particular to its type.
+ *
+ * Keeping the common state together lets the parts of the game loop that
+ * treat every entity the same, saving positions, moving by velocity and
+ * telling the collision grid where things are, run as single loops over the
+ * arrays rather than a method call on each entity.
+ *
+ * Rows never move once given out, so an entity can keep its row number for
+ * as long as it lives. Freed rows are reused by the next entity added, and
+ * the arrays only grow when more entities are alive at once than ever
+ * before.
+ *
+ * @author Marcus Whybrow
+ */
+public class ComponentStore {
+
+	/** The horizontal position of each entity **/
+	protected int[] x = new int[64];
+	/** The vertical position of each entity **/
+	protected int[] y = new int[64];
+	/** The horizontal position at the end of the previous game loop **/
+	protected int[] prevX = new int[64];
+	/** The vertical position at the end of the previous game loop **/
+	protected int[] prevY = new int[64];
+	/** The horizontal speed in pixels per second **/
+	protected int[] velX = new int[64];
+	/** The vertical speed in pixels per second **/
+	protected int[] velY = new int[64];
+	/** The part of a pixel moved horizontally but not yet added to the position, in thousandths **/
+	protected int[] carryX = new int[64];
+	/** The part of a pixel moved vertically but not yet added to the position, in thousandths **/
+	protected int[] carryY = new int[64];
+	/** The left of the hitbox, relative to the position **/
+	protected int[] boxX = new int[64];
+	/** The top of the hitbox, relative to the position **/
+	protected int[] boxY = new int[64];
+	/** The width of the hitbox **/
+	protected int[] boxWidth = new int[64];
+	/** The height of the hitbox **/
+	protected int[] boxHeight = new int[64];
+	/** The proxy number in the collision grid, -1 if not in the grid **/
+	protected int[] proxy = new int[64];
+	/** The image currently displayed **/
+	protected Image[] sprite = new Image[64];
+	/** True for rows that belong to an entity **/
+	protected boolean[] live = new boolean[64];
+
+	/** Reused for the hitbox of whichever entity is being looked at **/
+	private Rectangle box = new Rectangle();
+
+	/** The number of rows ever given out **/
+	private int rows = 0;
+	/** The number of rows that belong to an entity **/
+	private int liveCount = 0;
+	/** Rows that are free to be reused **/
+	private int[] freeRows = new int[16];
+	/** The number of free rows **/
+	private int freeCount = 0;
+
+	/**
+	 * Give out a row for a new entity, which starts still at its position
+	 * with no sprite
+	 *
+	 * @param x The horizontal position
+	 * @param y The vertical position
+	 * @return The row
+	 */
+	public int add(int x, int y) {
+
+		int row;
+
+		if(freeCount > 0) {
+			row = freeRows[--freeCount];
+		} else {
+			if(rows == live.length) {
+				grow(rows * 2);
+			}
+			row = rows++;
+		}
+
+		this.x[row] = prevX[row] = x;
+		this.y[row] = prevY[row] = y;
+		velX[row] = velY[row] = 0;
+		carryX[row] = carryY[row] = 0;
+		boxX[row] = boxY[row] = boxWidth[row] = boxHeight[row] = 0;
+		proxy[row] = -1;
+		sprite[row] = null;
+		live[row] = true;
+
+		liveCount++;
+		return row;
+	}
+
+	/**
+	 * Copy a row from another store into a new row of this one
+	 *
+	 * @param from The store holding the row
+	 * @param fromRow The row to copy
+	 * @return The new row
+	 */
+	public int copy(ComponentStore from, int fromRow) {
+
+		int row = add(from.x[fromRow], from.y[fromRow]);
+
+		prevX[row] = from.prevX[fromRow];
+		prevY[row] = from.prevY[fromRow];
+		velX[row] = from.velX[fromRow];
+		velY[row] = from.velY[fromRow];
+		carryX[row] = from.carryX[fromRow];
+		carryY[row] = from.carryY[fromRow];
+		boxX[row] = from.boxX[fromRow];
+		boxY[row] = from.boxY[fromRow];
+		boxWidth[row] = from.boxWidth[fromRow];
+		boxHeight[row] = from.boxHeight[fromRow];
+		proxy[row] = from.proxy[fromRow];
+		sprite[row] = from.sprite[fromRow];
+
+		return row;
+	}
+
+	/**
+	 * Free a row to be reused
+	 *
+	 * @param row The row to free
+	 */
+	public void free(int row) {
+
+		if(row < 0 || row >= rows || !live[row]) {
+			return;
+		}
+
+		live[row] = false;
+		sprite[row] = null;
+		liveCount--;
+
+		if(freeCount == freeRows.length) {
+			int[] grown = new int[freeCount * 2];
+			System.arraycopy(freeRows, 0, grown, 0, freeCount);
+			freeRows = grown;
+		}
+		freeRows[freeCount++] = row;
+	}
+
+	/**
+	 * Get the number of rows that belong to an entity
+	 *
+	 * @return The number of entities
+	 */
+	public int size() {
+
+		return liveCount;
+	}
+
+	/**
+	 * Record every current position as the previous position, before a game
+	 * loop moves anything
+	 *
+	 */
+	public void savePositions() {
+
+		for(int i = 0; i < rows; i++) {
+			prevX[i] = x[i];
+			prevY[i] = y[i];
+		}
+	}
+
+	/**
+	 * Move every entity by its velocity
+	 *
+	 * @param delta The time since the last game loop
+	 */
+	public void integrate(long delta) {
+
+		for(int i = 0; i < rows; i++) {
+			if(live[i]) {
+				move(i, velX[i], velY[i], delta);
+			}
+		}
+	}
+
+	/**
+	 * Move an entity at a speed for a time. Positions are whole pixels, so
+	 * the part of a pixel left over is carried on to the next move rather
+	 * than dropped, which keeps every speed the same whatever the length of
+	 * a step.
+	 *
+	 * @param row The row of the entity
+	 * @param speedX The horizontal speed in pixels per second
+	 * @param speedY The vertical speed in pixels per second
+	 * @param delta The time to move for, in milliseconds
+	 */
+	public void move(int row, int speedX, int speedY, long delta) {
+
+		long movedX = speedX * delta + carryX[row];
+		long movedY = speedY * delta + carryY[row];
+
+		x[row] += (int) (movedX / 1000);
+		y[row] += (int) (movedY / 1000);
+		carryX[row] = (int) (movedX % 1000);
+		carryY[row] = (int) (movedY % 1000);
+	}
+
+	/**
+	 * Tell the collision grid where the hitbox of every entity in it is now
+	 *
+	 * @param grid The collision grid
+	 */
+	public void sync(CollisionGrid grid) {
+
+		for(int i = 0; i < rows; i++) {
+			if(live[i] && proxy[i] >= 0) {
+				box.setBounds(x[i] + boxX[i], y[i] + boxY[i], boxWidth[i], boxHeight[i]);
+				grid.update(proxy[i], box);
+			}
+		}
+	}
+
+	/**
+	 * Make every array larger, keeping the rows given out so far
+	 *
+	 * @param size The new number of rows
+	 */
+	private void grow(int size) {
+
+		x = grow(x, size);
+		y = grow(y, size);
+		prevX = grow(prevX, size);
+		prevY = grow(prevY, size);
+		velX = grow(velX, size);
+		velY = grow(velY, size);
+		carryX = grow(carryX, size);
+		carryY = grow(carryY, size);
+		boxX = grow(boxX, size);
+		boxY = grow(boxY, size);
+		boxWidth = grow(boxWidth, size);
+		boxHeight = grow(boxHeight, size);
+		proxy = grow(proxy, size);
+
+		Image[] grownSprite = new Image[size];
+		System.arraycopy(sprite, 0, grownSprite, 0, rows);
+		sprite = grownSprite;
+
+		boolean[] grownLive = new boolean[size];
+		System.arraycopy(live, 0, grownLive, 0, rows);
+		live = grownLive;
+	}
+
+	/**
+	 * Copy an array into a larger one
+	 *
+	 * @param array The array to copy
+	 * @param size The size of the new array
+	 * @return The larger array
+	 */
+	private int[] grow(int[] array, int size) {
+
+		int[] grown = new int[size];
+		System.arraycopy(array, 0, grown, 0, rows);
+		return grown;
+	}
+}
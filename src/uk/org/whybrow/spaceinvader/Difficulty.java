@@ -0,0 +1,200 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import java.lang.reflect.Field;
+
+/**
+ * The numbers that decide how hard each level is, how often the tanks try a
+ * special attack and how likely each attack is, and how the score and bonus
+ * at the end of a level are worked out. The defaults are the game as it has
+ * always been played.
+ *
+ * A game reads its difficulty but never changes it, so one difficulty can be
+ * shared by any number of games running at once, as long as it is not
+ * changed while they run. Each setting can be set by name, which lets the
+ * batch runner sweep settings given on the command line.
+ *
+ * @author Marcus Whybrow
+ */
+public class Difficulty {
+
+	/** The time between checks for a special attack on level 0, in milliseconds **/
+	protected int specialDelay = 5000;
+	/** How much sooner each level checks for a special attack, in milliseconds **/
+	protected int specialDelayPerLevel = 50;
+	/** The percentage chance of a burst attack on level 0 **/
+	protected double burstChance = 3;
+	/** The percentage chance of an array attack on level 0 **/
+	protected double arrayChance = 2;
+	/** How much the chance of each special attack grows each level **/
+	protected double chancePerLevel = 0.5;
+	/** The highest percentage chance of a burst attack **/
+	protected double burstChanceMax = 50;
+	/** The highest percentage chance of an array attack **/
+	protected double arrayChanceMax = 40;
+	/** The percentage chance of releasing a power up at each check **/
+	protected double powerUpChance = 10;
+	/** The most shells fired in one burst **/
+	protected int burstLimit = 5;
+	/** The number of shells fired in one array **/
+	protected int arrayCount = 3;
+
+	/** The share of the level score added again at the end of a level, per levelScoreStep levels **/
+	protected double levelScoreShare = 0.5;
+	/** The number of levels between each increase of the level score share **/
+	protected int levelScoreStep = 2;
+	/** The number of levels between each increase of the bonus multiplier **/
+	protected int multiplierStep = 100;
+	/** What the bonus is multiplied by when the invader was never hit **/
+	protected double perfectBonus = 2;
+
+	/**
+	 * Get the time between checks for a special attack
+	 *
+	 * @param level The level being played
+	 * @return The time in milliseconds
+	 */
+	public int getSpecialDelay(long level) {
+
+		return specialDelay - (int) (level * specialDelayPerLevel);
+	}
+
+	/**
+	 * Get the percentage chance of a burst attack at each check
+	 *
+	 * @param level The level being played
+	 * @return The chance, 0 to 100
+	 */
+	public double getBurstChance(long level) {
+
+		return Math.min(burstChance + (int) (level * chancePerLevel), burstChanceMax);
+	}
+
+	/**
+	 * Get the percentage chance of an array attack at each check
+	 *
+	 * @param level The level being played
+	 * @return The chance, 0 to 100
+	 */
+	public double getArrayChance(long level) {
+
+		return Math.min(arrayChance + (int) (level * chancePerLevel), arrayChanceMax);
+	}
+
+	/**
+	 * Get the percentage chance of a power up being released at each check
+	 *
+	 * @return The chance, 0 to 100
+	 */
+	public double getPowerUpChance() {
+
+		return powerUpChance;
+	}
+
+	/**
+	 * Get the most shells fired in one burst
+	 *
+	 * @return The number of shells
+	 */
+	public int getBurstLimit() {
+
+		return burstLimit;
+	}
+
+	/**
+	 * Get the number of shells fired in one array
+	 *
+	 * @return The number of shells
+	 */
+	public int getArrayCount() {
+
+		return arrayCount;
+	}
+
+	/**
+	 * Get the score added at the end of a level for the score made during it
+	 *
+	 * @param levelScore The score made during the level
+	 * @param level The level completed
+	 * @return The score to add
+	 */
+	public long getLevelReward(long levelScore, long level) {
+
+		return Math.round(levelScore * levelScoreShare * (int) (level / levelScoreStep));
+	}
+
+	/**
+	 * Get the bonus multiplier at the end of a level
+	 *
+	 * @param level The level completed
+	 * @return The multiplier
+	 */
+	public double getMultiplier(long level) {
+
+		return level / multiplierStep;
+	}
+
+	/**
+	 * Get the bonus at the end of a level, never negative
+	 *
+	 * @param multiplier The bonus multiplier for the level
+	 * @param levelScore The score made during the level
+	 * @param perfect True if the invader was never hit
+	 * @return The bonus
+	 */
+	public int getBonus(double multiplier, long levelScore, boolean perfect) {
+
+		int bonus = (int) (multiplier * levelScore);
+
+		if(perfect) {
+			bonus *= perfectBonus;
+		}
+
+		return Math.max(bonus, 0);
+	}
+
+	/**
+	 * Change a setting by its name, as used for the fields of this class
+	 *
+	 * @param name The name of the setting
+	 * @param value The new value
+	 * @throws IllegalArgumentException If there is no such setting
+	 */
+	public void set(String name, double value) {
+
+		try {
+			Field field = Difficulty.class.getDeclaredField(name);
+
+			if(field.getType() == int.class) {
+				field.setInt(this, (int) value);
+			} else {
+				field.setDouble(this, value);
+			}
+		} catch(NoSuchFieldException e) {
+			throw new IllegalArgumentException("No difficulty setting called " + name);
+		} catch(IllegalAccessException e) {
+			throw new IllegalArgumentException("Cannot set " + name + ": " + e);
+		}
+	}
+
+	/**
+	 * Copy the difficulty, so the copy can be changed without changing games
+	 * already using this one
+	 *
+	 * @return The copy
+	 */
+	public Difficulty copy() {
+
+		Difficulty copy = new Difficulty();
+
+		for(Field field : Difficulty.class.getDeclaredFields()) {
+			try {
+				field.set(copy, field.get(this));
+			} catch(IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		return copy;
+	}
+}
@@ -2,95 +2,58 @@
 package uk.org.whybrow.spaceinvader;
 
 import java.awt.Image;
-import javax.imageio.ImageIO;
-import java.net.URL;
-
-import java.awt.Graphics;
-import java.awt.Graphics2D;
-
-import java.awt.geom.AffineTransform;
 
 /**
- * Displays and keeps track of the energy bar
+ * Displays and keeps track of the energy bar, each game has one of its own
  *
  * @author Marcus Whybrow
  */
 public class EnergyEntity extends Entity {
 
-	/** The single instance of this class **/
-	private static EnergyEntity single = new EnergyEntity();
-
 	/** The type of energy bar currently in use **/
-	private static int type;
+	private int type;
 	/** Has a continous grid **/
 	public static final int CONTINUOUS = 0;
 	/** Has a segmented grid **/
 	public static final int SEGMENTED = 1;
 
 	/** The current energy level **/
-	private static double energy = 100;
+	private double energy = 100;
 	/** The graphical bar that represents the energy level **/
-	private static Image bar;
-	/** The transformation that represents the length (scale) of the bar **/
-	private static AffineTransform transform = new AffineTransform();
+	private Image bar;
 
 	/** True if the bar should be displayed **/
-	private static boolean isVisible = false;
+	private boolean isVisible = false;
 
 	/**
-	 * Creates the single instance of this class
+	 * Creates the energy bar for a game
 	 *
+	 * @param game The game the energy bar is in
 	 */
-	private EnergyEntity() {
-
-		super(350, 100, "sprites/shield_bar_grid.png");
+	public EnergyEntity(Game game) {
 
-		try {
-			URL url = getClass().getClassLoader().getResource("sprites/shield_bar.png");
-			bar = ImageIO.read(url);
-		} catch(Exception e) {
-			System.err.println("Could not find image: sprites/shield_bar.png");
-		}
-	}
-
-	/**
-	 * Get the single and only instance of this class
-	 *
-	 * @return The only instance of this class
-	 */
-	public static EnergyEntity get() {
+		super(350, 100, "sprites/shield_bar_grid.png", game);
 
-		return single;
+		bar = SpriteCache.get("sprites/shield_bar.png");
 	}
 
 	/**
-	 * Draw the grid and the bar to represent the current energy
+	 * Add the grid and the bar to represent the current energy to a snapshot,
+	 * the bar is scaled up from the bottom of the grid to its length
 	 *
-	 * @param g The graphics context to draw to
+	 * @param frame The snapshot being taken
 	 */
-	public void draw(Graphics g) {
+	public void snapshot(FrameSnapshot frame) {
 
 		if(isVisible) {
 
-			Graphics2D g2 = (Graphics2D) g;
+			int height = getSprite().getHeight(null);
 
-			g2.drawImage(bar, transform, null);
-			g2.drawImage(sprite, pos.x, pos.y, null);
+			frame.scaled(bar, getX(), getY() + height, - energy * height / 100);
+			frame.sprite(getSprite(), getX(), getY(), getX(), getY());
 		}
 	}
 
-	/**
-	 * This class uses its move to update the scale of the energy bar
-	 *
-	 * @param delta The time since the last game loop
-	 */
-	public void move(long delta) {
-
-		transform.setToIdentity();
-		transform.translate(pos.x, pos.y + sprite.getHeight(null));
-		transform.scale(1, - energy * sprite.getHeight(null) / 100 );
-	}
-
 	/**
 	 * Set the type of gride to use
 	 *
@@ -0,0 +1,391 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Measures how a game is running, how long each frame takes to update and
+ * draw, how much is on the stage and how much work the engine is doing.
+ *
+ * The game loop hands over its timings once per frame, they are kept in
+ * histograms so stutters show up in the high percentiles even when the
+ * average looks fine. Once registered, the metrics and each histogram can be
+ * read over JMX, for example with jconsole, under the
+ * uk.org.whybrow.spaceinvader domain. Each game is registered under its own
+ * name, game-1, game-2 and so on in the order they were created, so any
+ * number of games in one process can be read side by side. They can also be
+ * drawn over the stage as a small overlay.
+ *
+ * @author Marcus Whybrow
+ */
+public class EngineMetrics implements EngineMetricsMBean {
+
+	/** The JMX domain everything is registered under **/
+	private static final String DOMAIN = "uk.org.whybrow.spaceinvader";
+	/** How often the overlay text is brought up to date, in nanoseconds **/
+	private static final long OVERLAY_REFRESH = 500000000L;
+	/** The font the overlay is drawn in **/
+	private static final Font OVERLAY_FONT = new Font("Monospaced", Font.PLAIN, 11);
+	/** The colour behind the overlay text **/
+	private static final Color OVERLAY_BACKGROUND = new Color(0, 0, 0, 160);
+	/** The height of each line of the overlay **/
+	private static final int OVERLAY_LINE = 13;
+
+	/** The number of games that have been measured so far **/
+	private static final AtomicInteger games = new AtomicInteger();
+
+	/** The game being measured **/
+	private Game game;
+	/** The name the metrics are registered under, different for every game **/
+	private String name;
+
+	/** The time spent running game logic each frame, in nanoseconds **/
+	protected Histogram update = new Histogram("ns");
+	/** The time spent drawing each frame, in nanoseconds **/
+	protected Histogram render = new Histogram("ns");
+	/** The time from the start of one frame to the start of the next, in nanoseconds **/
+	protected Histogram frame = new Histogram("ns");
+	/** The number of entities, shells and pops on the stage each frame **/
+	protected Histogram population = new Histogram("entities");
+
+	/** The number of frames measured **/
+	private volatile long frames = 0;
+	/** The number of shells fired by every tank **/
+	protected volatile long shellsFired = 0;
+	/** The number of hitboxes tested against the invader **/
+	protected volatile long collisionsTested = 0;
+	/** The number of shells that hit the player's invader without its shield on **/
+	protected volatile long hitsTaken = 0;
+
+	/** True to draw the overlay over the stage **/
+	private volatile boolean overlayShown = false;
+	/** When the overlay text was last brought up to date **/
+	private long overlayRefreshed = 0;
+	/** The atlas the overlay is drawn from, null until first drawn **/
+	private GlyphAtlas overlayAtlas;
+	/** The text of each line of the overlay **/
+	private char[][] overlay = new char[6][];
+
+	/**
+	 * Create the metrics for a game
+	 *
+	 * @param game The game to measure
+	 */
+	public EngineMetrics(Game game) {
+
+		this.game = game;
+		this.name = "game-" + games.incrementAndGet();
+	}
+
+	/**
+	 * Make the metrics and histograms readable over JMX, through the platform
+	 * MBean server
+	 *
+	 */
+	public void register() {
+
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+			server.registerMBean(this, new ObjectName(DOMAIN + ":type=EngineMetrics,name=" + name));
+			server.registerMBean(update, new ObjectName(DOMAIN + ":type=Histogram,game=" + name + ",name=update"));
+			server.registerMBean(render, new ObjectName(DOMAIN + ":type=Histogram,game=" + name + ",name=render"));
+			server.registerMBean(frame, new ObjectName(DOMAIN + ":type=Histogram,game=" + name + ",name=frame"));
+			server.registerMBean(population, new ObjectName(DOMAIN + ":type=Histogram,game=" + name + ",name=population"));
+		} catch(Exception e) {
+			System.err.println("Could not register the engine metrics: " + e);
+		}
+	}
+
+	/**
+	 * Get the name the metrics are registered under over JMX
+	 *
+	 * @return The name, such as game-1
+	 */
+	public String getName() {
+
+		return name;
+	}
+
+	/**
+	 * Record the timings of a frame, along with what is on the stage at the
+	 * end of it
+	 *
+	 * @param updateTime The time spent running game logic, in nanoseconds
+	 * @param renderTime The time spent drawing, in nanoseconds
+	 * @param frameTime The time since the previous frame started, in nanoseconds
+	 */
+	public void frame(long updateTime, long renderTime, long frameTime) {
+
+		step(updateTime);
+		rendered(renderTime, frameTime);
+	}
+
+	/**
+	 * Record the time spent running game logic for a frame, along with what
+	 * is on the stage at the end of it, should only be called by the game
+	 * logic
+	 *
+	 * @param updateTime The time spent running game logic, in nanoseconds
+	 */
+	public void step(long updateTime) {
+
+		update.record(updateTime);
+		population.record(getEntities() + getShells() + getPops());
+	}
+
+	/**
+	 * Record the time spent drawing a frame, should only be called by the
+	 * thread that draws
+	 *
+	 * @param renderTime The time spent drawing, in nanoseconds
+	 * @param frameTime The time since the previous frame started, in nanoseconds
+	 */
+	public void rendered(long renderTime, long frameTime) {
+
+		render.record(renderTime);
+		frame.record(frameTime);
+		frames++;
+	}
+
+	/**
+	 * Draw the overlay over the stage, if it is shown
+	 *
+	 * @param g2 The graphics context to draw to
+	 */
+	public void draw(Graphics2D g2) {
+
+		if(!overlayShown) {
+			return;
+		}
+
+		//Only lay out the text now and again, so it can be read
+
+		long now = System.nanoTime();
+
+		if(overlay[0] == null || now - overlayRefreshed > OVERLAY_REFRESH) {
+			overlayRefreshed = now;
+			overlay[0] = "ms        p50    p99  p99.9    max".toCharArray();
+			overlay[1] = line("frame ", frame);
+			overlay[2] = line("update", update);
+			overlay[3] = line("render", render);
+			overlay[4] = ("ents " + getEntities() + " shells " + getShells() + " pops " + getPops()).toCharArray();
+			overlay[5] = ("quality " + getRenderQuality()).toCharArray();
+		}
+
+		//Only look the atlas up once, the overlay is only drawn by the render
+		//thread
+
+		if(overlayAtlas == null) {
+			overlayAtlas = GlyphAtlas.get(OVERLAY_FONT, Color.WHITE);
+		}
+
+		GlyphAtlas atlas = overlayAtlas;
+		int top = game.image.getHeight(null) - overlay.length * OVERLAY_LINE - 8;
+		int width = 0;
+
+		for(int i = 0; i < overlay.length; i++) {
+			width = Math.max(width, atlas.getWidth(overlay[i], overlay[i].length));
+		}
+
+		g2.setColor(OVERLAY_BACKGROUND);
+		g2.fillRect(0, top, width + 8, overlay.length * OVERLAY_LINE + 8);
+
+		for(int i = 0; i < overlay.length; i++) {
+			atlas.draw(g2, overlay[i], overlay[i].length, 4, top + (i + 1) * OVERLAY_LINE);
+		}
+	}
+
+	/**
+	 * Lay out a line of the overlay for a timing histogram, in milliseconds
+	 *
+	 * @param name The name of the timing
+	 * @param histogram The histogram of the timing
+	 * @return The text of the line
+	 */
+	private static char[] line(String name, Histogram histogram) {
+
+		StringBuilder line = new StringBuilder(name);
+
+		appendMillis(line, histogram.getP50());
+		appendMillis(line, histogram.getP99());
+		appendMillis(line, histogram.getP999());
+		appendMillis(line, histogram.getMax());
+
+		return line.toString().toCharArray();
+	}
+
+	/**
+	 * Write a time in milliseconds to two decimal places, right aligned in a
+	 * column seven characters wide
+	 *
+	 * @param text The text to add the time to
+	 * @param nanos The time in nanoseconds
+	 */
+	private static void appendMillis(StringBuilder text, long nanos) {
+
+		long hundredths = (nanos + 5000) / 10000;
+		String millis = (hundredths / 100) + "." + ((hundredths % 100 < 10) ? "0" : "") + (hundredths % 100);
+
+		for(int i = millis.length(); i < 7; i++) {
+			text.append(' ');
+		}
+
+		text.append(millis);
+	}
+
+	/**
+	 * Get the number of frames measured
+	 *
+	 * @return The number of frames
+	 */
+	public long getFrames() {
+
+		return frames;
+	}
+
+	/**
+	 * Get the number of game logic steps run
+	 *
+	 * @return The number of steps
+	 */
+	public long getTicks() {
+
+		return game.getTicks();
+	}
+
+	/**
+	 * Get the number of entities on the stage
+	 *
+	 * @return The number of entities
+	 */
+	public int getEntities() {
+
+		return game.entities.size();
+	}
+
+	/**
+	 * Get the number of live shells
+	 *
+	 * @return The number of shells
+	 */
+	public int getShells() {
+
+		return game.shells.size();
+	}
+
+	/**
+	 * Get the number of pop up texts on the stage
+	 *
+	 * @return The number of pops
+	 */
+	public int getPops() {
+
+		return game.pops.size();
+	}
+
+	/**
+	 * Get the number of shells fired by every tank
+	 *
+	 * @return The number of shells
+	 */
+	public long getShellsFired() {
+
+		return shellsFired;
+	}
+
+	/**
+	 * Get the number of hitboxes the collision grid has tested against the
+	 * invader
+	 *
+	 * @return The number of tests
+	 */
+	public long getCollisionsTested() {
+
+		return collisionsTested;
+	}
+
+	/**
+	 * Get the number of shells that hit the player's invader without its
+	 * shield on
+	 *
+	 * @return The number of hits
+	 */
+	public long getHitsTaken() {
+
+		return hitsTaken;
+	}
+
+	/**
+	 * Get the number of sprites decoded, across every game
+	 *
+	 * @return The number of sprites
+	 */
+	public long getSpritesDecoded() {
+
+		return SpriteCache.getMisses();
+	}
+
+	/**
+	 * Get the level of quality frames are being drawn at
+	 *
+	 * @return The name of the level
+	 */
+	public String getRenderQuality() {
+
+		return game.quality.getLevelName();
+	}
+
+	/**
+	 * Get the number of times the render quality has changed
+	 *
+	 * @return The number of changes
+	 */
+	public long getRenderQualityChanges() {
+
+		return game.quality.getChanges();
+	}
+
+	/**
+	 * Get whether the overlay is drawn over the stage
+	 *
+	 * @return True if it is shown
+	 */
+	public boolean isOverlayShown() {
+
+		return overlayShown;
+	}
+
+	/**
+	 * Set whether the overlay is drawn over the stage
+	 *
+	 * @param shown True to show it
+	 */
+	public void setOverlayShown(boolean shown) {
+
+		overlayShown = shown;
+	}
+
+	/**
+	 * Forget every timing and count recorded so far
+	 *
+	 */
+	public void reset() {
+
+		update.reset();
+		render.reset();
+		frame.reset();
+		population.reset();
+		frames = 0;
+		shellsFired = 0;
+		collisionsTested = 0;
+		hitsTaken = 0;
+	}
+}
@@ -0,0 +1,40 @@
+
+package uk.org.whybrow.spaceinvader;
+
+/**
+ * The parts of EngineMetrics that can be seen and used over JMX
+ *
+ * @author Marcus Whybrow
+ */
+public interface EngineMetricsMBean {
+
+	public String getName();
+
+	public long getFrames();
+
+	public long getTicks();
+
+	public int getEntities();
+
+	public int getShells();
+
+	public int getPops();
+
+	public long getShellsFired();
+
+	public long getCollisionsTested();
+
+	public long getHitsTaken();
+
+	public long getSpritesDecoded();
+
+	public String getRenderQuality();
+
+	public long getRenderQualityChanges();
+
+	public boolean isOverlayShown();
+
+	public void setOverlayShown(boolean shown);
+
+	public void reset();
+}
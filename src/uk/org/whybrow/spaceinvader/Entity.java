@@ -1,11 +1,7 @@
 
 package uk.org.whybrow.spaceinvader;
 
-import java.awt.Point;
-import java.awt.Graphics;
 import java.awt.Image;
-import javax.imageio.ImageIO;
-import java.net.URL;
 
 import java.awt.Rectangle;
 
@@ -14,20 +10,30 @@ import java.awt.Rectangle;
  * information, as well as an image, hitbox and how to draw a basic image to
  * the stage.
  *
+ * The position, velocity, hitbox and image are kept in a row of the game's
+ * ComponentStore rather than in the entity itself, the entity reads and
+ * writes them through its row. Entities made without a game are held in a
+ * store of their own until they are added to a game's list.
+ *
  * Is abstarct and therefor can only be extended, to enforce consistancy
  *
  * @author Marcus Whybrow
  */
 public abstract class Entity {
 
-	/** The current image to display for this entity */
-	protected Image sprite;
-	/** The position in x y space **/
-	protected Point pos;
+	/** The store holding the position, velocity, hitbox and image **/
+	protected ComponentStore store;
+	/** The row of this entity in the store, -1 once disposed **/
+	protected int row;
 	/** The game this entity is in **/
 	protected Game game;
 	/** A rectangle representing the hitable area for this entties sprite **/
-	protected Rectangle hitbox = new Rectangle();
+	private Rectangle hitbox = new Rectangle();
+
+	/** The handle of this entity in the EntityList it is in, -1 if none **/
+	protected int handle = -1;
+	/** True once this entity has been removed from its EntityList **/
+	protected boolean removed = false;
 
 	/**
 	 * Create an entity without a reference to a game or an image
@@ -36,7 +42,8 @@ public abstract class Entity {
 	 * @param y Vertical positional value
 	 */
 	public Entity(int x, int y) {
-		pos = new Point(x,y);
+
+		this(x, y, null, null);
 	}
 
 	/**
@@ -48,16 +55,14 @@ public abstract class Entity {
 	 * @param game The game this entity is being used in
 	 */
 	public Entity(int x, int y, String ref, Game game) {
-		this(x,y);
+
+		store = (game != null) ? game.components : new ComponentStore();
+		row = store.add(x, y);
+		this.game = game;
+
 		if(ref != null) {
-			try {
-				URL url = getClass().getClassLoader().getResource(ref);
-				sprite = ImageIO.read(url);
-			} catch(Exception e) {
-				System.err.println("Could not find image: " + ref);
-			}
+			changeSprite(SpriteCache.get(ref));
 		}
-		this.game = game;
 	}
 
 	/**
@@ -73,20 +78,174 @@ public abstract class Entity {
 	}
 
 	/**
-	 * Change the image for this entitiy to a new image
+	 * Change the image for this entitiy to a new image, the image is only
+	 * decoded the first time it is used by any entity
 	 *
 	 * @param ref Reference string, path to the new image's location
 	 */
 	public void changeSprite(String ref) {
 
-		try {
-			URL url = getClass().getClassLoader().getResource(ref);
-			sprite = ImageIO.read(url);
-		} catch(Exception e) {
-			System.err.println("Could not find image: " + ref);
+		changeSprite(SpriteCache.get(ref));
+	}
+
+	/**
+	 * Change the image for this entity to an image already obtained from the
+	 * SpriteCache, no lookup or decoding is done
+	 *
+	 * @param sprite The shared image to display
+	 */
+	public void changeSprite(Image sprite) {
+
+		if(store.sprite[row] != sprite) {
+			store.sprite[row] = sprite;
+			fitHitbox(sprite);
+		}
+	}
+
+	/**
+	 * Set the hitbox for a new image, by default the whole of the image.
+	 * Entities with a smaller hitable area override this.
+	 *
+	 * @param sprite The image now displayed
+	 */
+	protected void fitHitbox(Image sprite) {
+
+		if(sprite != null) {
+			setHitbox(0, 0, sprite.getWidth(null), sprite.getHeight(null));
+		}
+	}
+
+	/**
+	 * Set the hitable area, relative to the position
+	 *
+	 * @param x The left of the hitbox
+	 * @param y The top of the hitbox
+	 * @param width The width of the hitbox
+	 * @param height The height of the hitbox
+	 */
+	protected void setHitbox(int x, int y, int width, int height) {
+
+		store.boxX[row] = x;
+		store.boxY[row] = y;
+		store.boxWidth[row] = width;
+		store.boxHeight[row] = height;
+	}
+
+	/**
+	 * Get the image currently displayed
+	 *
+	 * @return The image
+	 */
+	public Image getSprite() {
+
+		return store.sprite[row];
+	}
+
+	/**
+	 * Get the horizontal position
+	 *
+	 * @return The horizontal position
+	 */
+	public int getX() {
+
+		return store.x[row];
+	}
+
+	/**
+	 * Get the vertical position
+	 *
+	 * @return The vertical position
+	 */
+	public int getY() {
+
+		return store.y[row];
+	}
+
+	/**
+	 * Set the horizontal position
+	 *
+	 * @param x The new horizontal position
+	 */
+	public void setX(int x) {
+
+		store.x[row] = x;
+	}
+
+	/**
+	 * Set the vertical position
+	 *
+	 * @param y The new vertical position
+	 */
+	public void setY(int y) {
+
+		store.y[row] = y;
+	}
+
+	/**
+	 * Set the speed this entity is moved at by the game after every entity's
+	 * move() has been called
+	 *
+	 * @param x The horizontal speed in pixels per second
+	 * @param y The vertical speed in pixels per second
+	 */
+	public void setVelocity(int x, int y) {
+
+		store.velX[row] = x;
+		store.velY[row] = y;
+	}
+
+	/**
+	 * Move straight away at a speed for a time, for entities that move
+	 * themselves rather than setting a velocity. Any part of a pixel left
+	 * over is kept for the next move.
+	 *
+	 * @param speedX The horizontal speed in pixels per second
+	 * @param speedY The vertical speed in pixels per second
+	 * @param delta The time to move for, in milliseconds
+	 */
+	protected void moveAt(int speedX, int speedY, long delta) {
+
+		store.move(row, speedX, speedY, delta);
+	}
+
+	/**
+	 * Set the proxy number of this entity's hitbox in the collision grid, the
+	 * game keeps the grid up to date with the hitbox after moving
+	 *
+	 * @param proxy The proxy number, -1 if not in the grid
+	 */
+	protected void setProxy(int proxy) {
+
+		store.proxy[row] = proxy;
+	}
+
+	/**
+	 * Move this entity's components into another store, if they are not
+	 * already there
+	 *
+	 * @param to The store to move to
+	 */
+	protected void attach(ComponentStore to) {
+
+		if(to != store && row >= 0) {
+			int moved = to.copy(store, row);
+			store.free(row);
+			store = to;
+			row = moved;
 		}
 	}
 
+	/**
+	 * Free this entity's row in its store, once it has left gameplay for
+	 * good. The entity must not be used afterwards.
+	 *
+	 */
+	public void dispose() {
+
+		store.free(row);
+		row = -1;
+	}
+
 	/**
 	 * This entities movement and action phase is calculated here when called
 	 *
@@ -97,12 +256,24 @@ public abstract class Entity {
 	}
 
 	/**
-	 * Draws this entities sprite to the screen
+	 * Record the current position as the previous position, called before
+	 * each game loop moves this entity
+	 */
+	public void savePosition() {
+		store.prevX[row] = store.x[row];
+		store.prevY[row] = store.y[row];
+	}
+
+	/**
+	 * Add this entity to a snapshot of the stage, to be drawn between its
+	 * previous and current positions. Snapshots are taken once per frame
+	 * rather than once per step, and never when headless, so this must only
+	 * read the game and never change it.
 	 *
-	 * @param g The graphics context to draw to
+	 * @param frame The snapshot being taken
 	 */
-	public void draw(Graphics g) {
-		g.drawImage(sprite, pos.x, pos.y, null);
+	public void snapshot(FrameSnapshot frame) {
+		frame.sprite(store.sprite[row], store.prevX[row], store.prevY[row], store.x[row], store.y[row]);
 	}
 
 	/**
@@ -111,10 +282,53 @@ public abstract class Entity {
 	 * @return The rectangle representing this entities sprite
 	 */
 	public Rectangle getHitbox() {
-		hitbox.setBounds(pos.x, pos.y, sprite.getWidth(null), sprite.getHeight(null));
+		hitbox.setBounds(store.x[row] + store.boxX[row], store.y[row] + store.boxY[row], store.boxWidth[row], store.boxHeight[row]);
 		return hitbox;
 	}
 
+	/**
+	 * Get the hitbox as it was at the end of the last game loop, which does
+	 * not change while entities are being moved
+	 *
+	 * @param box The rectangle to set to the hitbox
+	 * @return The same rectangle
+	 */
+	public Rectangle getLastHitbox(Rectangle box) {
+		box.setBounds(store.prevX[row] + store.boxX[row], store.prevY[row] + store.boxY[row], store.boxWidth[row], store.boxHeight[row]);
+		return box;
+	}
+
+	/**
+	 * Check whether move() can run at the same time as other independent
+	 * entities, it must only change this entity, read others through
+	 * getLastHitbox() and hold back any other change to the game until
+	 * commit()
+	 *
+	 * @return True if independent
+	 */
+	public boolean isIndependent() {
+		return false;
+	}
+
+	/**
+	 * Apply the changes to the rest of the game held back during move(),
+	 * called for independent entities once every one has moved
+	 *
+	 */
+	public void commit() {
+
+	}
+
+	/**
+	 * Check whether this entity has been removed from gameplay, it may still be
+	 * in its list until the end of the game loop
+	 *
+	 * @return True if the entity has been removed
+	 */
+	public boolean isRemoved() {
+		return removed;
+	}
+
 	/**
 	 * Takes two entities and checks whether the two sprites contained within
 	 * those entitis collide
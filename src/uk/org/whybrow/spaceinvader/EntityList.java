@@ -0,0 +1,266 @@
+
+package uk.org.whybrow.spaceinvader;
+
+/**
+ * A list of entities that can safely be removed from while the list is being
+ * looped over.
+ *
+ * Removing an entity only marks it, the entity stays where it is until
+ * flush() is called at the end of the game loop, so no other entity is
+ * skipped or moved part way through a loop. flush() then removes each marked
+ * entity by moving the last entity into its place, which takes the same time
+ * however long the list is. As a result the order of the list is not kept
+ * for entities added after a removed one.
+ *
+ * Adding an entity gives back a handle, a number that can be kept instead of
+ * a reference and turned back into the entity with getByHandle(). A handle
+ * contains a generation count for the slot it refers to, so once its entity
+ * has been removed the handle stops working, even if the slot is reused.
+ *
+ * A list made with a ComponentStore brings the components of each entity
+ * added into that store, and frees them when a removed entity is flushed out
+ * of the list, as it has then left gameplay for good. Clearing the list
+ * leaves the components alone, as entities such as the invader are added
+ * again afterwards.
+ *
+ * @author Marcus Whybrow
+ */
+public class EntityList <T extends Entity> {
+
+	/** The number of bits of a handle used for the slot number **/
+	private static final int SLOT_BITS = 22;
+	/** Selects the slot number from a handle **/
+	private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+	/** Keeps generations small enough that handles are never negative **/
+	private static final int GENERATION_MASK = -1 >>> (SLOT_BITS + 1);
+
+	/** The entities in the list, packed at the start **/
+	private Object[] items = new Object[16];
+	/** The slot of each entity in the list **/
+	private int[] itemSlot = new int[16];
+	/** The number of entities in the list **/
+	private int count = 0;
+
+	/** The position in the list of the entity in each slot **/
+	private int[] slotIndex = new int[16];
+	/** The generation of each slot, increased whenever it is freed **/
+	private int[] slotGeneration = new int[16];
+	/** The number of slots ever used **/
+	private int slotCount = 0;
+	/** Slots that are free to be reused **/
+	private int[] freeSlots = new int[16];
+	/** The number of free slots **/
+	private int freeCount = 0;
+
+	/** The store entities' components are kept in, null to leave them be **/
+	private ComponentStore store;
+
+	/** Handles of the entities to remove at the next flush **/
+	private int[] removals = new int[16];
+	/** The number of entities to remove at the next flush **/
+	private int removalCount = 0;
+
+	/**
+	 * Create an empty list which leaves the components of its entities in
+	 * whichever store they are in
+	 *
+	 */
+	public EntityList() {
+
+	}
+
+	/**
+	 * Create an empty list which keeps the components of its entities in a
+	 * store
+	 *
+	 * @param store The store to keep components in
+	 */
+	public EntityList(ComponentStore store) {
+
+		this.store = store;
+	}
+
+	/**
+	 * Add an entity to the end of the list
+	 *
+	 * @param entity The entity to add
+	 * @return The handle of the entity
+	 */
+	public int add(T entity) {
+
+		int slot;
+
+		if(freeCount > 0) {
+			slot = freeSlots[--freeCount];
+		} else {
+			if(slotCount == slotIndex.length) {
+				slotIndex = grow(slotIndex, slotCount * 2, slotCount);
+				slotGeneration = grow(slotGeneration, slotCount * 2, slotCount);
+			}
+			slot = slotCount++;
+		}
+
+		if(count == items.length) {
+			Object[] grown = new Object[count * 2];
+			System.arraycopy(items, 0, grown, 0, count);
+			items = grown;
+			itemSlot = grow(itemSlot, count * 2, count);
+		}
+
+		if(store != null) {
+			entity.attach(store);
+		}
+
+		items[count] = entity;
+		itemSlot[count] = slot;
+		slotIndex[slot] = count;
+		count++;
+
+		entity.handle = (slotGeneration[slot] << SLOT_BITS) | slot;
+		entity.removed = false;
+		return entity.handle;
+	}
+
+	/**
+	 * Get the entity at a position in the list
+	 *
+	 * @param i The position, from 0 to size() - 1
+	 * @return The entity
+	 */
+	public T get(int i) {
+
+		return (T) items[i];
+	}
+
+	/**
+	 * Get an entity by its handle
+	 *
+	 * @param handle The handle given when the entity was added
+	 * @return The entity, or null if it has since been removed
+	 */
+	public T getByHandle(int handle) {
+
+		int slot = handle & SLOT_MASK;
+
+		if(handle < 0 || slot >= slotCount || slotGeneration[slot] != handle >>> SLOT_BITS) {
+			return null;
+		}
+
+		return (T) items[slotIndex[slot]];
+	}
+
+	/**
+	 * Get the number of entities in the list, including any waiting to be
+	 * removed
+	 *
+	 * @return The size of the list
+	 */
+	public int size() {
+
+		return count;
+	}
+
+	/**
+	 * Mark an entity to be removed at the next flush, it stays in the list
+	 * until then but isRemoved() will return true. Does nothing if the entity
+	 * is not in this list.
+	 *
+	 * @param entity The entity to remove
+	 */
+	public void remove(T entity) {
+
+		if(entity.removed || getByHandle(entity.handle) != entity) {
+			return;
+		}
+
+		entity.removed = true;
+
+		if(removalCount == removals.length) {
+			removals = grow(removals, removalCount * 2, removalCount);
+		}
+		removals[removalCount++] = entity.handle;
+	}
+
+	/**
+	 * Remove every entity marked for removal, should be called once at the end
+	 * of the game loop when nothing is looping over the list
+	 *
+	 */
+	public void flush() {
+
+		for(int r = 0; r < removalCount; r++) {
+
+			int handle = removals[r];
+
+			if(getByHandle(handle) == null) {
+				continue;
+			}
+
+			int slot = handle & SLOT_MASK;
+			int i = slotIndex[slot];
+			int last = --count;
+
+			if(store != null) {
+				((Entity) items[i]).dispose();
+			}
+
+			//Move the last entity into the gap
+
+			items[i] = items[last];
+			itemSlot[i] = itemSlot[last];
+			slotIndex[itemSlot[i]] = i;
+			items[last] = null;
+
+			freeSlot(slot);
+		}
+
+		removalCount = 0;
+	}
+
+	/**
+	 * Remove every entity straight away, all of their handles stop working
+	 *
+	 */
+	public void clear() {
+
+		for(int i = 0; i < count; i++) {
+			((Entity) items[i]).removed = true;
+			freeSlot(itemSlot[i]);
+			items[i] = null;
+		}
+
+		count = 0;
+		removalCount = 0;
+	}
+
+	/**
+	 * Free a slot to be reused, moving on its generation so that old handles
+	 * to it no longer match
+	 *
+	 * @param slot The slot to free
+	 */
+	private void freeSlot(int slot) {
+
+		slotGeneration[slot] = (slotGeneration[slot] + 1) & GENERATION_MASK;
+
+		if(freeCount == freeSlots.length) {
+			freeSlots = grow(freeSlots, freeCount * 2, freeCount);
+		}
+		freeSlots[freeCount++] = slot;
+	}
+
+	/**
+	 * Copy an array into a larger one
+	 *
+	 * @param array The array to copy
+	 * @param size The size of the new array
+	 * @param used The number of elements to copy
+	 * @return The larger array
+	 */
+	private static int[] grow(int[] array, int size, int used) {
+
+		int[] grown = new int[size];
+		System.arraycopy(array, 0, grown, 0, used);
+		return grown;
+	}
+}
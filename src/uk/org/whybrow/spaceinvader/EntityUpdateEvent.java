@@ -0,0 +1,61 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A Flight Recorder event covering a single entity moving in one game logic
+ * step. The type of the entity is recorded, so a recording can be grouped by
+ * type to see which kind of entity a long step was spent in. As with
+ * LoopPhaseEvent, only moves longer than the threshold are recorded, and no
+ * event is created until Flight Recorder has been started.
+ *
+ * @author Marcus Whybrow
+ */
+@Name("uk.org.whybrow.spaceinvader.EntityUpdate")
+@Label("Entity Update")
+@Category({"The Last Space Invader", "Game Loop"})
+@Description("An entity move that took longer than usual")
+@Threshold("1 ms")
+@StackTrace(false)
+public class EntityUpdateEvent extends Event {
+
+	/** The type of the entity that moved **/
+	@Label("Entity Type")
+	private Class<?> entityType;
+
+	/** The game logic step the entity moved in **/
+	@Label("Tick")
+	private long tick;
+
+	/**
+	 * Start timing an entity move
+	 *
+	 * @param entity The entity about to move
+	 * @param tick The game logic step it is moving in
+	 */
+	public EntityUpdateEvent(Entity entity, long tick) {
+
+		this.entityType = entity.getClass();
+		this.tick = tick;
+		begin();
+	}
+
+	/**
+	 * Start timing an entity move, if anything could be recording it
+	 *
+	 * @param entity The entity about to move
+	 * @param tick The game logic step it is moving in
+	 * @return The event, or null if Flight Recorder has not been started
+	 */
+	public static EntityUpdateEvent start(Entity entity, long tick) {
+
+		return LoopPhaseEvent.isRecorder() ? new EntityUpdateEvent(entity, tick) : null;
+	}
+}
@@ -0,0 +1,70 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands snapshots of the stage from the game logic to the render thread
+ * with three snapshots, so neither thread ever waits for the other.
+ *
+ * The game logic always fills its own back snapshot, then publishes it by
+ * swapping it with the middle one. The render thread takes the middle one
+ * by swapping it with the front one it was drawing, but only if a new
+ * snapshot has been published since, otherwise it keeps drawing the front
+ * one. The only thing shared is which snapshot is in the middle and whether
+ * it is new, held in a single atomic integer, so each swap is one atomic
+ * exchange.
+ *
+ * @author Marcus Whybrow
+ */
+public class FrameExchange {
+
+	/** Selects the snapshot from the middle state **/
+	private static final int INDEX = 3;
+	/** Set in the middle state when the middle snapshot has not been taken **/
+	private static final int FRESH = 4;
+
+	/** The three snapshots **/
+	private FrameSnapshot[] frames = { new FrameSnapshot(), new FrameSnapshot(), new FrameSnapshot() };
+	/** The snapshot in the middle, and whether it is new **/
+	private AtomicInteger middle = new AtomicInteger(1);
+	/** The snapshot the game logic is filling, only used by the game logic **/
+	private int back = 0;
+	/** The snapshot being drawn, only used by the render thread **/
+	private int front = 2;
+
+	/**
+	 * Get the snapshot to fill, should only be called by the game logic
+	 *
+	 * @return The back snapshot
+	 */
+	public FrameSnapshot getBack() {
+
+		return frames[back];
+	}
+
+	/**
+	 * Publish the back snapshot once filled, should only be called by the
+	 * game logic
+	 *
+	 */
+	public void publish() {
+
+		back = middle.getAndSet(back | FRESH) & INDEX;
+	}
+
+	/**
+	 * Get the latest snapshot published, should only be called by the render
+	 * thread. The snapshot can be drawn until the next call.
+	 *
+	 * @return The latest snapshot, empty if nothing has been published
+	 */
+	public FrameSnapshot take() {
+
+		if((middle.get() & FRESH) != 0) {
+			front = middle.getAndSet(front) & INDEX;
+		}
+
+		return frames[front];
+	}
+}
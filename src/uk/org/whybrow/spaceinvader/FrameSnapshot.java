@@ -0,0 +1,462 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.geom.AffineTransform;
+
+/**
+ * Everything needed to draw the stage as it was after a game logic step,
+ * taken by the game logic and drawn by the render thread, so that drawing
+ * never looks at an entity while it is being moved.
+ *
+ * The stage is kept as a list of draw records in the order they are drawn,
+ * each a sprite or a line of text with where it was before and after the
+ * step, so it can still be drawn part way between the two. The scenery comes
+ * first, then the entities, then the pops and text, with the shells drawn
+ * between the entities and the pops.
+ *
+ * Snapshots are reused rather than made for every step, the arrays only
+ * grow when a step has more to draw than any before it. Text is copied into
+ * the snapshot, as the text of scores is changed in place.
+ *
+ * @author Marcus Whybrow
+ */
+public class FrameSnapshot {
+
+	/** A sprite drawn between two positions **/
+	protected static final int SPRITE = 0;
+	/** A sprite stretched vertically from its position **/
+	protected static final int SCALED = 1;
+	/** A line of text drawn from a glyph atlas **/
+	protected static final int TEXT = 2;
+
+	/** The game logic step this is a snapshot of, -1 if empty **/
+	private long tick = -1;
+	/** The real time in nanoseconds the step was simulated up to **/
+	private long stepEnd;
+	/** The length of a step in nanoseconds **/
+	private long step = 1;
+
+	/** The number of records **/
+	private int count = 0;
+	/** The kind of each record, SPRITE, SCALED or TEXT **/
+	private int[] kind = new int[64];
+	/** The sprite of each record, null for text **/
+	private Image[] image = new Image[64];
+	/** The atlas text is drawn from, null for sprites **/
+	private GlyphAtlas[] atlas = new GlyphAtlas[64];
+	/** Where each record was horizontally before the step **/
+	private int[] fromX = new int[64];
+	/** Where each record was vertically before the step **/
+	private int[] fromY = new int[64];
+	/** Where each record was horizontally after the step **/
+	private int[] toX = new int[64];
+	/** Where each record was vertically after the step **/
+	private int[] toY = new int[64];
+	/** How much each scaled sprite is stretched vertically **/
+	private double[] scale = new double[64];
+	/** Where the text of each record starts in chars **/
+	private int[] textStart = new int[64];
+	/** The length of the text of each record **/
+	private int[] textLength = new int[64];
+	/** The text of every record, one after another **/
+	private char[] chars = new char[256];
+	/** The number of chars used **/
+	private int charCount = 0;
+
+	/** The number of records that are scenery **/
+	private int sceneryEnd = 0;
+	/** The number of records drawn before the shells **/
+	private int shellsAt = 0;
+
+	/** The sprite every shell is drawn from **/
+	private RotatedSprite shellSprite;
+	/** The number of shells **/
+	private int shellCount = 0;
+	/** The angle bucket of each shell **/
+	private int[] shellBucket = new int[32];
+	/** Where each shell was horizontally before the step **/
+	private double[] shellFromX = new double[32];
+	/** Where each shell was vertically before the step **/
+	private double[] shellFromY = new double[32];
+	/** Where each shell was horizontally after the step **/
+	private double[] shellToX = new double[32];
+	/** Where each shell was vertically after the step **/
+	private double[] shellToY = new double[32];
+
+	/** How far through loading the sprites are, 0 to 1, or -1 to not show **/
+	private double loading = -1;
+
+	/** Reused to draw scaled sprites **/
+	private AffineTransform transform = new AffineTransform();
+
+	/**
+	 * Empty the snapshot, ready to be taken of a new step
+	 *
+	 * @param tick The game logic step
+	 * @param stepEnd The real time in nanoseconds the step was simulated up to
+	 * @param step The length of a step in nanoseconds
+	 */
+	public void clear(long tick, long stepEnd, long step) {
+
+		for(int i = 0; i < count; i++) {
+			image[i] = null;
+			atlas[i] = null;
+		}
+
+		this.tick = tick;
+		this.stepEnd = stepEnd;
+		this.step = Math.max(1, step);
+
+		count = 0;
+		charCount = 0;
+		sceneryEnd = 0;
+		shellsAt = 0;
+		shellCount = 0;
+		loading = -1;
+	}
+
+	/**
+	 * Add a sprite
+	 *
+	 * @param sprite The sprite, nothing is added if null
+	 * @param fromX Where it was horizontally before the step
+	 * @param fromY Where it was vertically before the step
+	 * @param toX Where it was horizontally after the step
+	 * @param toY Where it was vertically after the step
+	 */
+	public void sprite(Image sprite, int fromX, int fromY, int toX, int toY) {
+
+		if(sprite != null) {
+			int i = add(SPRITE, fromX, fromY, toX, toY);
+			image[i] = sprite;
+		}
+	}
+
+	/**
+	 * Add a sprite stretched vertically from its position, which does not
+	 * move
+	 *
+	 * @param sprite The sprite
+	 * @param x The horizontal position
+	 * @param y The vertical position
+	 * @param scale How much to stretch it, negative to stretch upwards
+	 */
+	public void scaled(Image sprite, int x, int y, double scale) {
+
+		int i = add(SCALED, x, y, x, y);
+		image[i] = sprite;
+		this.scale[i] = scale;
+	}
+
+	/**
+	 * Add a line of text, the text is copied
+	 *
+	 * @param atlas The atlas to draw the text from
+	 * @param text The text
+	 * @param length The number of chars of the text to draw
+	 * @param fromX Where it was horizontally before the step
+	 * @param fromY Where the baseline was before the step
+	 * @param toX Where it was horizontally after the step
+	 * @param toY Where the baseline was after the step
+	 */
+	public void text(GlyphAtlas atlas, char[] text, int length, int fromX, int fromY, int toX, int toY) {
+
+		int i = add(TEXT, fromX, fromY, toX, toY);
+		this.atlas[i] = atlas;
+
+		if(charCount + length > chars.length) {
+			char[] grown = new char[Math.max(chars.length * 2, charCount + length)];
+			System.arraycopy(chars, 0, grown, 0, charCount);
+			chars = grown;
+		}
+
+		System.arraycopy(text, 0, chars, charCount, length);
+		textStart[i] = charCount;
+		textLength[i] = length;
+		charCount += length;
+	}
+
+	/**
+	 * Mark every record added so far as scenery
+	 *
+	 */
+	public void endScenery() {
+
+		sceneryEnd = count;
+	}
+
+	/**
+	 * Mark where the shells are drawn, after every record added so far
+	 *
+	 * @param sprite The sprite every shell is drawn from
+	 */
+	public void startShells(RotatedSprite sprite) {
+
+		shellsAt = count;
+		shellSprite = sprite;
+	}
+
+	/**
+	 * Add a shell
+	 *
+	 * @param bucket The angle bucket of the shell
+	 * @param fromX Where it was horizontally before the step
+	 * @param fromY Where it was vertically before the step
+	 * @param toX Where it was horizontally after the step
+	 * @param toY Where it was vertically after the step
+	 */
+	public void shell(int bucket, double fromX, double fromY, double toX, double toY) {
+
+		if(shellCount == shellBucket.length) {
+			int size = shellCount * 2;
+
+			int[] grownBucket = new int[size];
+			System.arraycopy(shellBucket, 0, grownBucket, 0, shellCount);
+			shellBucket = grownBucket;
+
+			shellFromX = grow(shellFromX, size, shellCount);
+			shellFromY = grow(shellFromY, size, shellCount);
+			shellToX = grow(shellToX, size, shellCount);
+			shellToY = grow(shellToY, size, shellCount);
+		}
+
+		int i = shellCount++;
+
+		shellBucket[i] = bucket;
+		shellFromX[i] = fromX;
+		shellFromY[i] = fromY;
+		shellToX[i] = toX;
+		shellToY[i] = toY;
+	}
+
+	/**
+	 * Set how far through loading the sprites are, to draw a progress bar
+	 *
+	 * @param loading 0 to 1, or -1 to not show the bar
+	 */
+	public void setLoading(double loading) {
+
+		this.loading = loading;
+	}
+
+	/**
+	 * Get the game logic step this is a snapshot of
+	 *
+	 * @return The step, or -1 if nothing has been taken
+	 */
+	public long getTick() {
+
+		return tick;
+	}
+
+	/**
+	 * Work out how far between the two positions of each record to draw for
+	 * a point in real time. A frame is drawn one step behind the game logic,
+	 * so the positions after the step are reached a step after it was
+	 * simulated up to.
+	 *
+	 * @param now The real time in nanoseconds
+	 * @return How far between the positions to draw, 0 to 1
+	 */
+	public double getAlpha(long now) {
+
+		double alpha = (double) (now - stepEnd) / step;
+		return Math.max(0, Math.min(1, alpha));
+	}
+
+	/**
+	 * Get how far through loading the sprites are
+	 *
+	 * @return 0 to 1, or -1 to not show the bar
+	 */
+	public double getLoading() {
+
+		return loading;
+	}
+
+	/**
+	 * Get the number of records
+	 *
+	 * @return The number of records
+	 */
+	public int size() {
+
+		return count;
+	}
+
+	/**
+	 * Get the number of records that are scenery, the records before any
+	 * others
+	 *
+	 * @return The number of scenery records
+	 */
+	public int getSceneryEnd() {
+
+		return sceneryEnd;
+	}
+
+	/**
+	 * Get the number of records drawn before the shells
+	 *
+	 * @return The number of records
+	 */
+	public int getShellsAt() {
+
+		return shellsAt;
+	}
+
+	/**
+	 * Get the sprite of a record
+	 *
+	 * @param i The record
+	 * @return The sprite, null for text
+	 */
+	public Image getImage(int i) {
+
+		return image[i];
+	}
+
+	/**
+	 * Get where to draw a record horizontally
+	 *
+	 * @param i The record
+	 * @param alpha How far between the two positions, 0 to 1
+	 * @return The horizontal position
+	 */
+	public int getX(int i, double alpha) {
+
+		return fromX[i] + (int) Math.round((toX[i] - fromX[i]) * alpha);
+	}
+
+	/**
+	 * Get where to draw a record vertically
+	 *
+	 * @param i The record
+	 * @param alpha How far between the two positions, 0 to 1
+	 * @return The vertical position
+	 */
+	public int getY(int i, double alpha) {
+
+		return fromY[i] + (int) Math.round((toY[i] - fromY[i]) * alpha);
+	}
+
+	/**
+	 * Draw a range of the records
+	 *
+	 * @param g2 The graphics context to draw to
+	 * @param from The first record to draw
+	 * @param to One past the last record to draw
+	 * @param alpha How far between the two positions to draw, 0 to 1
+	 */
+	public void draw(Graphics2D g2, int from, int to, double alpha) {
+
+		for(int i = from; i < to; i++) {
+
+			int x = getX(i, alpha), y = getY(i, alpha);
+
+			switch(kind[i]) {
+				case SPRITE:
+					g2.drawImage(image[i], x, y, null);
+					break;
+				case SCALED:
+					transform.setToTranslation(x, y);
+					transform.scale(1, scale[i]);
+					g2.drawImage(image[i], transform, null);
+					break;
+				case TEXT:
+					atlas[i].draw(g2, chars, textStart[i], textLength[i], x, y);
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Draw every shell
+	 *
+	 * @param g2 The graphics context to draw to
+	 * @param alpha How far between the two positions to draw, 0 to 1
+	 */
+	public void drawShells(Graphics2D g2, double alpha) {
+
+		for(int i = 0; i < shellCount; i++) {
+			shellSprite.draw(g2, shellBucket[i],
+					(int) Math.round(shellFromX[i] + (shellToX[i] - shellFromX[i]) * alpha),
+					(int) Math.round(shellFromY[i] + (shellToY[i] - shellFromY[i]) * alpha));
+		}
+	}
+
+	/**
+	 * Add a record, growing the arrays if needed
+	 *
+	 * @param kind The kind of record
+	 * @param fromX Where it was horizontally before the step
+	 * @param fromY Where it was vertically before the step
+	 * @param toX Where it was horizontally after the step
+	 * @param toY Where it was vertically after the step
+	 * @return The record
+	 */
+	private int add(int kind, int fromX, int fromY, int toX, int toY) {
+
+		if(count == this.kind.length) {
+			int size = count * 2;
+
+			this.kind = grow(this.kind, size);
+			this.fromX = grow(this.fromX, size);
+			this.fromY = grow(this.fromY, size);
+			this.toX = grow(this.toX, size);
+			this.toY = grow(this.toY, size);
+			textStart = grow(textStart, size);
+			textLength = grow(textLength, size);
+			scale = grow(scale, size, count);
+
+			Image[] grownImage = new Image[size];
+			System.arraycopy(image, 0, grownImage, 0, count);
+			image = grownImage;
+
+			GlyphAtlas[] grownAtlas = new GlyphAtlas[size];
+			System.arraycopy(atlas, 0, grownAtlas, 0, count);
+			atlas = grownAtlas;
+		}
+
+		int i = count++;
+
+		this.kind[i] = kind;
+		this.fromX[i] = fromX;
+		this.fromY[i] = fromY;
+		this.toX[i] = toX;
+		this.toY[i] = toY;
+
+		return i;
+	}
+
+	/**
+	 * Copy an array of records into a larger one
+	 *
+	 * @param array The array to copy
+	 * @param size The size of the new array
+	 * @return The larger array
+	 */
+	private int[] grow(int[] array, int size) {
+
+		int[] grown = new int[size];
+		System.arraycopy(array, 0, grown, 0, count);
+		return grown;
+	}
+
+	/**
+	 * Copy an array into a larger one
+	 *
+	 * @param array The array to copy
+	 * @param size The size of the new array
+	 * @param used The number of elements to copy
+	 * @return The larger array
+	 */
+	private static double[] grow(double[] array, int size, int used) {
+
+		double[] grown = new double[size];
+		System.arraycopy(array, 0, grown, 0, used);
+		return grown;
+	}
+}
@@ -1,28 +1,26 @@
 
 package uk.org.whybrow.spaceinvader;
 
-import javax.swing.JFrame;
-import java.util.ArrayList;
-import javax.swing.JPanel;
-import java.awt.Dimension;
 import java.awt.Image;
 import java.awt.Font;
 
-import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Color;
 
-import java.awt.RenderingHints;
-import java.awt.font.TextLayout;
-import java.net.URL;
-import javax.imageio.ImageIO;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.util.ArrayList;
 
 /**
  * The core of the game, controls and stores all central information
  *
  * @author Marcus Whybrow
  */
-public class Game extends JPanel {
+public class Game {
 
 	/** Lives remaining **/
 	private int lives = 3;
@@ -32,7 +30,7 @@ public class Game extends JPanel {
 	protected boolean beenHit = false;
 
 	/** The status the game is currently in, determins some actions **/
-	protected int status = 0;
+	protected int status = NEW_GAME;
 	/** Initialise entities for the next level, showing stats for previous, press space to begin **/
 	protected static final int STARTING_LEVEL = 1;
 	/** The player is currently playing a level, normal gameplay takes place **/
@@ -44,32 +42,105 @@ public class Game extends JPanel {
 	/** The game has just been started and is waiting to be started by the player **/
 	protected static final int NEW_GAME = 5;
 
-	/** The last time a game loop started **/
-	private long lastLoopTime = System.currentTimeMillis();
-
+	/** The thread the game logic runs on **/
+	private Thread loop;
+	/** The thread the stage is drawn on, when there is a screen **/
+	private Thread renderer;
+	/** The default number of game logic updates per second **/
+	protected static final int DEFAULT_UPDATE_RATE = 125;
+	/** The most steps to run in one loop before dropping time **/
+	private static final int MAX_STEPS_PER_LOOP = 25;
+	/** The fixed time step for game logic in milliseconds **/
+	private long step = 1000 / DEFAULT_UPDATE_RATE;
+	/** The game clock, milliseconds of game logic run so far **/
+	protected long time = 0;
+	/** True to move past the start and stats screens without a key press **/
+	private boolean autoAdvance = false;
+	/** The seed the random decisions in this game come from **/
+	private long seed;
+	/** The source of all random decisions in this game **/
+	protected GameRandom random;
+	/** How hard each level is **/
+	protected Difficulty difficulty;
+	/** The number of game logic steps run so far **/
+	private long ticks = 0;
+	/** When the step being run ends in real time, for applying key changes **/
+	private long stepEnd = 0;
+
+	/** Frame timings and engine counters for this game **/
+	protected EngineMetrics metrics = new EngineMetrics(this);
+	/** How carefully frames are drawn, adjusted to keep within the frame budget **/
+	protected RenderQuality quality = new RenderQuality();
+	/** Hands snapshots of the stage from the game logic to the render thread **/
+	protected FrameExchange frames = new FrameExchange();
+	/** The snapshot taken when drawing on the game logic thread **/
+	private FrameSnapshot direct = new FrameSnapshot();
+
+	/** Records key changes each step, null if not recording **/
+	private InputRecorder recorder;
+	/** Plays back recorded key changes each step, null if not replaying **/
+	private InputReplay replay;
+
+	/** The broad phase for checking what the invader collides with **/
+	protected CollisionGrid grid;
+	/** The width and height of each cell of the collision grid **/
+	private static final int COLLISION_CELL_SIZE = 64;
+
+	/** The position, velocity, hitbox and image of every entity in the game **/
+	protected ComponentStore components = new ComponentStore();
 	/** All entities (of different types) invloved in gameplay **/
-	protected ArrayList entities = new ArrayList();
+	protected EntityList <Entity>entities = new EntityList(components);
 	/** All pop up text entities (PopEntity) that are involved in gameplay **/
-	protected ArrayList <PopEntity>pops = new ArrayList();
+	protected EntityList <PopEntity>pops = new EntityList(components);
+
+	/** Every shell fired by the tank **/
+	protected ShellStore shells = new ShellStore(this);
+
+	/** Moves the tanks and drones across the cores **/
+	protected UpdateScheduler scheduler = new UpdateScheduler(Runtime.getRuntime().availableProcessors());
 
-	/** The computer controller tank entity **/
+	/** The computer controller tank entity, the first of the tanks **/
 	protected TankEntity tank;
 	/** The player controller invader entity **/
 	protected InvaderEntity invader = new InvaderEntity(192, 0, this);
+	/** Every tank, just the one outside of swarm mode **/
+	protected ArrayList <TankEntity>tanks = new ArrayList();
+	/** Every invader, the player's last, just the one outside of swarm mode **/
+	protected ArrayList <InvaderEntity>invaders = new ArrayList();
+	/** Finds the invader nearest to each tank in swarm mode **/
+	private InvaderIndex invaderIndex = new InvaderIndex();
+	/** The number of invaders each level, including the player's **/
+	private int swarmInvaders = 1;
+	/** The number of tanks each level **/
+	private int swarmTanks = 1;
+	/** The source of random decisions for placing the swarm, null outside of swarm mode **/
+	private GameRandom swarmRandom;
 	/** The land that the tank moves around **/
 	protected LandEntity land;
+	/** The energy bar for the invader's power ups **/
+	protected EnergyEntity energy = new EnergyEntity(this);
+	/** The invader's shield, drains the energy bar while it is on **/
+	protected ShieldEntity shield = new ShieldEntity(this);
 	/** Overlays full stage size images onto the stage **/
-	protected SplashEntity splash = SplashEntity.get();
-
-	/** The JFrame that contains the game **/
-	private JFrame frame;
+	protected SplashEntity splash = new SplashEntity(this);
+	/** The keys pressed by the player of this game **/
+	protected Keyboard keyboard = new Keyboard();
+
+	/** The screen the game is drawn to, null if not being displayed **/
+	private volatile GameScreen screen;
+	/** Decodes every sprite before the game can begin, null if not preloading **/
+	private AssetLoader assets;
 	/** The background image for the game **/
 	protected Image image;
+	/** The background and land, drawn together **/
+	protected StaticLayer scenery;
 
 	/** The font used for all scores **/
 	private Font scoreFont = new Font("Times", Font.BOLD, 20);
 	/** The font used for pop up text **/
 	private Font popFont = new Font("Times", Font.BOLD, 20);
+	/** The atlas the level stats are drawn from, kept rather than looked up each frame **/
+	private GlyphAtlas levelStatsAtlas = GlyphAtlas.get(scoreFont, Color.WHITE);
 	/** The current total score **/
 	protected ScoreText currentScore = new ScoreText(0, scoreFont, 50, 30, this);
 	/** The level current being played **/
@@ -83,162 +154,531 @@ public class Game extends JPanel {
 	private int bonus;
 	/** Used to display the ferect splash for a certain amoung of loop time **/
 	private long perfectLoop;
+	/** The time in milliseconds to display the perfect splash for **/
+	private static final int PERFECT_TIME = 2000;
+	/** True once the perfect splash is over and the level stats are shown **/
+	private boolean showLevelStats;
+	/** The text of the level stats, level score, multiplier, bonus, current score and best **/
+	private char[][] levelStats = new char[5][];
+	/** The vertical position of each line of the level stats **/
+	private static final int[] LEVEL_STATS_Y = {100, 150, 200, 270, 320};
 
 	/**
-	 * Ensures the game's frame is created and visible
+	 * Create the game with a different seed each time
 	 */
 	public Game() {
 
-		//Get the background image for the stage
+		this(System.nanoTime());
+	}
 
-		try {
-			URL url = getClass().getClassLoader().getResource("sprites/bg.png");
-			image = ImageIO.read(url);
-		} catch(Exception e) {
-			System.err.println("Could not find image");
-		}
+	/**
+	 * Create the game and initialise the positions of entities on the stage,
+	 * games with the same seed and the same input play out identically
+	 *
+	 * @param seed The seed for all random decisions in the game
+	 */
+	public Game(long seed) {
+
+		this(seed, new Difficulty());
+	}
+
+	/**
+	 * Create the game with a difficulty other than the usual one, games with
+	 * the same seed, difficulty and input play out identically
+	 *
+	 * @param seed The seed for all random decisions in the game
+	 * @param difficulty How hard each level is, which the game does not change
+	 */
+	public Game(long seed, Difficulty difficulty) {
 
-		//Set the size of the JPanel
+		this.seed = seed;
+		this.difficulty = difficulty;
+		random = new GameRandom(seed);
+
+		//Get the background image for the stage
 
-		setPreferredSize( new Dimension(image.getWidth(null), image.getHeight(null)) );
+		image = SpriteCache.get("sprites/bg.png");
+		scenery = new StaticLayer(image);
+		grid = new CollisionGrid(image.getWidth(null), image.getHeight(null), COLLISION_CELL_SIZE);
 
-		//Enable the keyboard untility class, and initialise the positions
-		//of entities on the stage
-		
-		Keyboard.init(this);
 		initEntities();
-		
-		//JFrame operations to behave normaly
-
-		frame = new JFrame();
-		frame.setTitle("The Last Space Invader");
-		frame.add(this);
-		frame.pack();
-		frame.setVisible(true);
-		frame.setDefaultCloseOperation(frame.EXIT_ON_CLOSE);
-		frame.setResizable(false);
-		
-		requestFocus();
+
+		//Draw the text for every pop up colour now, rather than on first use
+
+		GlyphAtlas.get(popFont, Color.WHITE);
+		GlyphAtlas.get(popFont, Color.RED);
+		GlyphAtlas.get(popFont, Color.GREEN);
     }
 
 	/**
-	 * Begins the game
+	 * Set the screen that the render thread draws each frame to
+	 *
+	 * @param screen The screen to draw to, null to stop drawing
+	 */
+	public void setScreen(GameScreen screen) {
+
+		this.screen = screen;
+	}
+
+	/**
+	 * Play with many invaders and many tanks. Every invader but the player's
+	 * is a drone that steers itself, and every tank follows its nearest
+	 * invader. The entities are set up again straight away.
+	 *
+	 * @param invaders The number of invaders, including the player's
+	 * @param tanks The number of tanks
+	 */
+	public void setSwarm(int invaders, int tanks) {
+
+		swarmInvaders = Math.max(1, invaders);
+		swarmTanks = Math.max(1, tanks);
+
+		if(swarmRandom == null) {
+			swarmRandom = random.split();
+		}
+
+		initEntities();
+	}
+
+	/**
+	 * Find the invader nearest to a point, as of the start of the current
+	 * game logic step
+	 *
+	 * @param x The horizontal position of the point
+	 * @param y The vertical position of the point
+	 * @return The nearest invader
+	 */
+	public InvaderEntity nearestInvader(int x, int y) {
+
+		if(invaders.size() == 1) {
+			return invader;
+		}
+
+		return invaderIndex.nearest(x, y);
+	}
+
+	/**
+	 * Find the top of the highest invader's hitbox, shells above it can no
+	 * longer hit anything
+	 *
+	 * @return The top of the highest hitbox
+	 */
+	public double invaderTop() {
+
+		double top = Double.MAX_VALUE;
+
+		for(int i = 0; i < invaders.size(); i++) {
+			top = Math.min(top, invaders.get(i).getHitbox().getMinY());
+		}
+
+		return top;
+	}
+
+	/**
+	 * Set the loader decoding the sprites, the player cannot begin the game
+	 * until it has finished
+	 *
+	 * @param assets The loader, null to begin without waiting
+	 */
+	public void setAssets(AssetLoader assets) {
+
+		this.assets = assets;
+	}
+
+	/**
+	 * Begins the game, the game logic runs on its own thread from here on,
+	 * and if there is a screen the stage is drawn on another
 	 */
 	public void start() {
 		status = NEW_GAME;
 
+		loop = new Thread(new Runnable() {
+			public void run() {
+				runLoop();
+			}
+		}, "Game Loop");
+		loop.start();
+
+		if(screen != null) {
+			renderer = new Thread(new Runnable() {
+				public void run() {
+					renderLoop();
+				}
+			}, "Render");
+			renderer.setDaemon(true);
+			renderer.start();
+		}
+	}
+
+	/**
+	 * Run the game logic as fast as possible without drawing anything, the
+	 * game clock moves on by one time step each update regardless of how
+	 * long the update really took. Needs no display, so can be used on a
+	 * headless machine. Each step is measured as a frame of its own.
+	 *
+	 * @param ticks The number of time steps to run
+	 */
+	public void runHeadless(long ticks) {
+
+		for(long i = 0; i < ticks; i++) {
+			long started = System.nanoTime();
+			update(step);
+			long updateTime = System.nanoTime() - started;
+
+			metrics.frame(updateTime, 0, updateTime);
+		}
+	}
+
+	/**
+	 * Set whether the start and level stats screens are skipped without
+	 * waiting for the space key, for running without a player
+	 *
+	 * @param autoAdvance True to skip the screens
+	 */
+	public void setAutoAdvance(boolean autoAdvance) {
+
+		this.autoAdvance = autoAdvance;
+	}
+
+	/**
+	 * Record the keys pressed during this game from now on
+	 *
+	 * @param recorder The recorder to write key changes to, null to stop
+	 */
+	public void setInputRecorder(InputRecorder recorder) {
+
+		this.recorder = recorder;
+	}
+
+	/**
+	 * Play back recorded key presses during this game from now on, the game
+	 * should have been created with the seed of the recording
+	 *
+	 * @param replay The recording to play back, null to stop
+	 */
+	public void setInputReplay(InputReplay replay) {
+
+		this.replay = replay;
+	}
+
+	/**
+	 * Get the seed that this games random decisions come from
+	 *
+	 * @return The seed
+	 */
+	public long getSeed() {
+
+		return seed;
+	}
+
+	/**
+	 * Get the fixed time step game logic is run with
+	 *
+	 * @return The time step in milliseconds
+	 */
+	public long getStep() {
+
+		return step;
+	}
+
+	/**
+	 * Get the number of game logic steps run so far
+	 *
+	 * @return The number of steps
+	 */
+	public long getTicks() {
+
+		return ticks;
+	}
+
+	/**
+	 * Get the bonus given at the end of the last level completed
+	 *
+	 * @return The bonus
+	 */
+	public int getBonus() {
+
+		return bonus;
+	}
+
+	/**
+	 * Get the game clock, which only moves on as game logic is run
+	 *
+	 * @return The milliseconds of game logic run so far
+	 */
+	public long getTime() {
+
+		return time;
+	}
+
+	/**
+	 * Set how many times per second the game logic is updated. The time step
+	 * is rounded to a whole number of milliseconds, as entities move using
+	 * millisecond deltas.
+	 *
+	 * @param updateRate The number of game logic updates per second
+	 */
+	public void setUpdateRate(int updateRate) {
+
+		if(updateRate > 0 && updateRate <= 1000) {
+			step = 1000 / updateRate;
+		}
+	}
+
+	/**
+	 * Set the time step game logic is run with directly, such as the step a
+	 * recording was made with, which going through an update rate would not
+	 * always give back
+	 *
+	 * @param step The time step in milliseconds, from 1 to 1000
+	 */
+	public void setStep(long step) {
+
+		if(step > 0 && step <= 1000) {
+			this.step = step;
+		}
+	}
+
+	/**
+	 * The game loop, runs the game logic in fixed time steps for however much
+	 * time has passed, then publishes a snapshot of the stage after the last
+	 * step for the render thread
+	 */
+	private void runLoop() {
+
+		long lastLoopTime = System.nanoTime();
+		long accumulator = 0;
+
 		while(true) {
 
+			//Work out how much time needs to be simulated
+
+			long now = System.nanoTime();
+			long stepNanos = step * 1000000L;
+
+			accumulator += now - lastLoopTime;
+			lastLoopTime = now;
+
+			//If we fell far behind, drop the time rather than trying to catch up
+
+			if(accumulator > stepNanos * MAX_STEPS_PER_LOOP) {
+				accumulator = stepNanos * MAX_STEPS_PER_LOOP;
+			}
+
+			//Run the game logic in fixed steps, each step ends at the point in
+			//real time the game has caught up to after it
+
+			boolean updated = false;
+
+			while(accumulator >= stepNanos) {
+				accumulator -= stepNanos;
+				stepEnd = now - accumulator;
+				update(step);
+				updated = true;
+			}
+
+			//Hand a snapshot of the stage after the last step to the render thread
+
+			if(screen != null && updated) {
+				snapshot(frames.getBack());
+				frames.publish();
+			}
+
+			if(updated) {
+				metrics.step(System.nanoTime() - now);
+			}
+
 			//Sleep for a bit
 
 			try {
-				Thread.sleep(2);
-			} catch(Exception e) {				
+				Thread.sleep(1);
+			} catch(Exception e) {
 			}
+		}
+	}
+
+	/**
+	 * The render loop, draws the latest snapshot of the stage published by
+	 * the game loop, between the positions before and after its step for how
+	 * long ago the step was simulated up to. Runs alongside the game logic,
+	 * so drawing a frame never holds up the next step.
+	 */
+	private void renderLoop() {
 
-			//Repaint the stage
+		long frameStarted = System.nanoTime();
 
-			repaint();
+		while(true) {
+
+			long now = System.nanoTime();
+			FrameSnapshot frame = frames.take();
+			GameScreen target = screen;
+
+			//Nothing to draw until the game loop has published a step
+
+			if(target != null && frame.getTick() >= 0) {
+				target.render(frame, frame.getAlpha(now));
+
+				long rendered = System.nanoTime();
+
+				metrics.rendered(rendered - now, now - frameStarted);
+				frameStarted = now;
+
+				//Draw more simply if the frame took too long, or better if it was quick
+
+				quality.frame(rendered - now);
+			}
+
+			//Sleep for a bit
+
+			try {
+				Thread.sleep(1);
+			} catch(Exception e) {
+			}
 		}
 	}
 
 	/**
-	 * Drawing for each frame, should not be called
+	 * Game logic for a single time step, moves all entities and checks for
+	 * the player moving between the start, level and stats screens
 	 *
-	 * @param g The graphics context
+	 * @param delta The time step in milliseconds
 	 */
-	public void paintComponent(Graphics g) {
+	protected void update(long delta) {
+
+		time += delta;
+
+		//Apply recorded or queued key changes, then record the keys for
+		//this step
 
-		//Set g2 rendering information
+		LoopPhaseEvent phase = LoopPhaseEvent.start(LoopPhaseEvent.INPUT, ticks);
 
-		Graphics2D g2 = (Graphics2D) g;
-		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-		g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+		if(replay != null) {
+			replay.apply(ticks, keyboard);
+		} else {
+			keyboard.poll(stepEnd, delta);
+		}
+
+		if(recorder != null) {
+			recorder.record(ticks, keyboard);
+		}
 
-		//Work out the time since the last loop to pass to movement calls
+		LoopPhaseEvent.end(phase);
 
-		long delta = System.currentTimeMillis() - lastLoopTime;
-		lastLoopTime = System.currentTimeMillis();
+		ticks++;
 
-		//
+		//Take where every invader is for tanks to find the nearest
+
+		if(invaders.size() > 1) {
+			invaderIndex.update(invaders);
+		}
 
-		super.paintComponent(g);
+		//Move all entities, starting with the scenery. Each entity does its
+		//own logic, then everything is moved by its velocity at once
 
-		//Draw background image
+		components.savePositions();
 
-		g.drawImage(image, 0, 0, null);
-		
-		//Draw and move all entities
+		if(status != STARTING_LEVEL)
+			scenery.move(delta);
+
+		//Independent entities go first, they can be spread over the cores as
+		//they only change themselves until committed in order
+
+		if(status != STARTING_LEVEL) {
+			for(int i = 0; i < entities.size(); i++) {
+				Entity entity = entities.get(i);
+				if(!entity.isRemoved() && entity.isIndependent())
+					scheduler.add(entity);
+			}
+
+			scheduler.run(delta, ticks);
+		}
 
 		for(int i = 0; i < entities.size(); i++) {
-			Entity entity = (Entity) entities.get(i);
-			if(status != STARTING_LEVEL)
+			Entity entity = entities.get(i);
+			if(entity.isRemoved() || entity.isIndependent())
+				continue;
+			if(status != STARTING_LEVEL) {
+				EntityUpdateEvent moved = EntityUpdateEvent.start(entity, ticks);
 				entity.move(delta);
-			entity.draw(g);
+				LoopPhaseEvent.end(moved);
+			}
+		}
+
+		if(status != STARTING_LEVEL)
+			components.integrate(delta);
+
+		//Move all shells
+
+		phase = LoopPhaseEvent.start(LoopPhaseEvent.SHELLS, ticks);
+
+		if(status != STARTING_LEVEL)
+			shells.move(delta);
+
+		LoopPhaseEvent.end(phase);
+
+		//Check what the invaders have collided with
+
+		phase = LoopPhaseEvent.start(LoopPhaseEvent.COLLISION, ticks);
+
+		if(status != STARTING_LEVEL) {
+			components.sync(grid);
+
+			for(int i = 0; i < invaders.size(); i++) {
+				InvaderEntity each = invaders.get(i);
+				metrics.collisionsTested += grid.check(each.getHitbox(), each);
+			}
 		}
 
-		//Draw and move all score pops
+		LoopPhaseEvent.end(phase);
+
+		//Move all score pops
+
+		phase = LoopPhaseEvent.start(LoopPhaseEvent.POPS, ticks);
 
 		for(int i = 0; i < pops.size(); i++) {
-			PopEntity pop = pops.get(i);
-			pop.move(delta);
-			pop.draw(g); //draw text
-			pop.draw(g2); //draw image
+			pops.get(i).move(delta);
 		}
 
-		//Render Scores
+		LoopPhaseEvent.end(phase);
+
+		//Now nothing is looping over them, take out removed entities
 
-		currentScore.draw(g2);
-		currentLevel.draw(g2);
+		entities.flush();
+		pops.flush();
 
 		if(status == STARTING_LEVEL) {
 
 			//Setup for displaying perfect sign
 
 			if(!beenHit) {
-				perfectLoop = System.currentTimeMillis();
+				perfectLoop = time;
 				beenHit = true;
 			}
 
 			//Display either perfect sign or previous level status
 
-			if(System.currentTimeMillis() - perfectLoop < 2000) {
+			if(time - perfectLoop < PERFECT_TIME) {
 
 				//Perfect sign
 
-				if(Keyboard.isPressed(Keyboard.SPACE)) {
-					perfectLoop = 0;
+				showLevelStats = false;
+
+				if(keyboard.isPressed(Keyboard.SPACE) || autoAdvance) {
+					perfectLoop = time - PERFECT_TIME;
 				} else {
 					splash.changeSprite(splash.PERFECT);
-					splash.draw(g);
 				}
 
 			} else {
 
 				//Level stats
 
+				showLevelStats = true;
 				splash.changeSprite(splash.NEXT_LEVEL);
-				splash.draw(g);
-
-				//Render all text, level score, multiplier, bonus, currrent score, current best
-
-				TextLayout stats;
-
-				stats = new TextLayout(levelScore + "", scoreFont, g2.getFontRenderContext());
-				stats.draw(g2, 50, 100);
-				stats = new TextLayout("x" + multiplier, scoreFont, g2.getFontRenderContext());
-				stats.draw(g2, 50, 150);
-				stats = new TextLayout(bonus + "", scoreFont, g2.getFontRenderContext());
-				stats.draw(g2, 50, 200);
-
-				stats = new TextLayout(currentScore.getScore() + "", scoreFont, g2.getFontRenderContext());
-				stats.draw(g2, 50, 270);
-				stats = new TextLayout(currentBest.getScore() + "", scoreFont, g2.getFontRenderContext());
-				stats.draw(g2, 50, 320);
 
 				//Press space to continue
 				
-				if(Keyboard.isPressed(Keyboard.SPACE)) {
+				if(keyboard.isPressed(Keyboard.SPACE) || autoAdvance) {
 					status = LEVEL_IN_PROGRESS;
 					levelScore = 0;
 					currentLevel.update(1);
@@ -250,20 +690,137 @@ public class Game extends JPanel {
 			//Splash the start screen
 
 			splash.changeSprite(splash.START);
-			splash.draw(g);
 
-			//Press space to continue
+			//Press space to continue, once every sprite is ready
 
-			if(Keyboard.isPressed(Keyboard.SPACE)) {
+			boolean ready = assets == null || assets.isReady();
+
+			if(ready && (keyboard.isPressed(Keyboard.SPACE) || autoAdvance)) {
 				status = LEVEL_IN_PROGRESS;
 				levelScore = 0;
 			}
 		}
+	}
 
-		//Dispose of the graphics context
+	/**
+	 * Draw the stage as it was between the last two game logic steps, taking
+	 * a snapshot of it first, for drawing on the thread running the game
+	 * logic
+	 *
+	 * @param g2 The graphics context
+	 * @param alpha How far between the last two steps to draw, 0 to 1
+	 */
+	protected void render(Graphics2D g2, double alpha) {
 
-		g2.dispose();
-		g.dispose();
+		snapshot(direct);
+		draw(g2, direct, alpha);
+	}
+
+	/**
+	 * Take a snapshot of everything to be drawn after the last game logic
+	 * step, in the order it is drawn, should only be called by the game logic
+	 *
+	 * @param frame The snapshot to fill
+	 */
+	protected void snapshot(FrameSnapshot frame) {
+
+		frame.clear(ticks, stepEnd, step * 1000000L);
+
+		//The background and land
+
+		scenery.snapshot(frame);
+
+		//All entities, then all shells
+
+		for(int i = 0; i < entities.size(); i++) {
+			entities.get(i).snapshot(frame);
+		}
+
+		shells.snapshot(frame);
+
+		//All score pops
+
+		for(int i = 0; i < pops.size(); i++) {
+			pops.get(i).snapshot(frame);
+		}
+
+		//Scores
+
+		currentScore.snapshot(frame);
+		currentLevel.snapshot(frame);
+
+		if(status == STARTING_LEVEL) {
+
+			splash.snapshot(frame);
+
+			if(showLevelStats) {
+
+				//All text, level score, multiplier, bonus, currrent score, current best
+
+				for(int i = 0; i < levelStats.length; i++) {
+					frame.text(levelStatsAtlas, levelStats[i], levelStats[i].length, 50, LEVEL_STATS_Y[i], 50, LEVEL_STATS_Y[i]);
+				}
+			}
+		} else if(status == NEW_GAME) {
+
+			//The start screen, and how far through loading the sprites are
+
+			splash.snapshot(frame);
+
+			if(assets != null && !assets.isReady()) {
+				frame.setLoading(assets.getProgress());
+			}
+		}
+	}
+
+	/**
+	 * Draw a snapshot of the stage, should only be called by whichever thread
+	 * draws
+	 *
+	 * @param g2 The graphics context
+	 * @param frame The snapshot to draw
+	 * @param alpha How far between the last two steps to draw, 0 to 1
+	 */
+	protected void draw(Graphics2D g2, FrameSnapshot frame, double alpha) {
+
+		//Set g2 rendering information for the current quality
+
+		quality.apply(g2);
+
+		//Draw the background and land
+
+		LoopPhaseEvent phase = LoopPhaseEvent.start(LoopPhaseEvent.BACKGROUND_DRAW, frame.getTick());
+		scenery.draw(g2, frame, alpha);
+		LoopPhaseEvent.end(phase);
+
+		//Draw all entities and shells
+
+		phase = LoopPhaseEvent.start(LoopPhaseEvent.ENTITY_DRAW, frame.getTick());
+		frame.draw(g2, frame.getSceneryEnd(), frame.getShellsAt(), alpha);
+		frame.drawShells(g2, quality.interpolatesShells() ? alpha : 1);
+		LoopPhaseEvent.end(phase);
+
+		//Draw all score pops, scores and screens
+
+		phase = LoopPhaseEvent.start(LoopPhaseEvent.TEXT_DRAW, frame.getTick());
+		frame.draw(g2, frame.getShellsAt(), frame.size(), alpha);
+
+		//Show how far through loading the sprites are
+
+		if(frame.getLoading() >= 0) {
+			int width = image.getWidth(null) - 100;
+			int y = image.getHeight(null) - 40;
+
+			g2.setColor(Color.WHITE);
+			g2.drawRect(50, y, width, 6);
+			g2.fillRect(50, y, (int) (width * frame.getLoading()), 6);
+		}
+
+		//Draw the metrics overlay on top of everything
+
+		metrics.draw(g2);
+
+		LoopPhaseEvent.end(phase);
 	}
 
 	/**
@@ -293,28 +850,70 @@ public class Game extends JPanel {
 	 */
 	public void initEntities() {
 
+		//Free the entities of the last level, the invader and the energy and
+		//shield bars carry on into the next
+
+		for(int i = 0; i < entities.size(); i++) {
+			Entity entity = entities.get(i);
+			if(entity != invader && entity != energy && entity != shield) {
+				entity.dispose();
+			}
+		}
+
+		if(land != null) {
+			land.dispose();
+		}
+
 		//Entity starting positions
 
-		invader.pos.x = (int) image.getWidth(null) / 2;
-		invader.pos.y = 0;
+		invader.setX((int) image.getWidth(null) / 2);
+		invader.setY(0);
 		invader.setStatus(invader.NOT_HIT_ANY_SIDE);
-		tank = new TankEntity(((int) image.getWidth(null)/2), 450, this);
+		invader.savePosition();
 		land = new LandEntity(-230, image.getHeight(null) -150, this);
 
-		//Clear the array list of existing entities
+		//Spread the tanks evenly along the rail, scatter any drones over the
+		//top of the stage
+
+		int width = image.getWidth(null);
+
+		tanks.clear();
+		invaders.clear();
+
+		for(int i = 0; i < swarmTanks; i++) {
+			tanks.add( new TankEntity(width * (i + 1) / (swarmTanks + 1), 450, this) );
+		}
+
+		tank = tanks.get(0);
+
+		for(int i = 1; i < swarmInvaders; i++) {
+			invaders.add( new InvaderEntity(swarmRandom.nextInt(width), swarmRandom.nextInt(200), this, swarmRandom.split()) );
+		}
+
+		invaders.add(invader);
+
+		//Clear the list of existing entities
+
+		entities.clear();
+		scenery.clear();
+		grid.clear();
+		shells.clear();
 
-		entities = new ArrayList();
+		//Add new entities in render order, the land is drawn with the
+		//background
 
-		//Add new entities in render order
+		scenery.add(land);
 
-		entities.add(land);
-		entities.add(tank);
-		entities.add(invader);
+		for(int i = 0; i < tanks.size(); i++) {
+			entities.add(tanks.get(i));
+		}
 
-		entities.add( EnergyEntity.get() );
-		entities.add( ShieldEntity.get() );
+		for(int i = 0; i < invaders.size(); i++) {
+			entities.add(invaders.get(i));
+		}
 
-		ShieldEntity.get().setGame(this);
+		entities.add(energy);
+		entities.add(shield);
     }
 
 	/**
@@ -322,6 +921,7 @@ public class Game extends JPanel {
 	 */
 	public void notifyDeath() {
 		status = DEAD;
+		LevelEvent.record(LevelEvent.DEATH, this);
     }
 
 	/**
@@ -329,26 +929,18 @@ public class Game extends JPanel {
 	 */
 	public void notifyLevelComplete() {
 		status = LEVEL_COMPLETE;
-		currentScore.update(Math.round(levelScore * 0.5 * (int) (currentLevel.getScore() / 2)));
-
-		//Calculate level bonus
-
-		multiplier = currentLevel.getScore() / 100;
-		bonus = (int) (multiplier * levelScore);
-
-		if(!beenHit) {
-			bonus *= 2;
-		}
+		currentScore.update(difficulty.getLevelReward(levelScore, currentLevel.getScore()));
 
-		//Ensure level bonus cannot be negative
+		//Calculate level bonus, which cannot be negative
 
-		if(bonus < 0) {
-			bonus = 0;
-		}
+		multiplier = difficulty.getMultiplier(currentLevel.getScore());
+		bonus = difficulty.getBonus(multiplier, levelScore, !beenHit);
 
 		//Add the bonus to the score
 
 		currentScore.update(bonus);
+
+		LevelEvent.record(LevelEvent.COMPLETE, this);
     }
 
 	/**
@@ -357,6 +949,17 @@ public class Game extends JPanel {
 	public void startNewLevel() {
 		status = STARTING_LEVEL;
 		initEntities();
+
+		//The stats cannot change until the next level starts, so lay out
+		//their text once
+
+		levelStats[0] = (levelScore + "").toCharArray();
+		levelStats[1] = ("x" + multiplier).toCharArray();
+		levelStats[2] = (bonus + "").toCharArray();
+		levelStats[3] = (currentScore.getScore() + "").toCharArray();
+		levelStats[4] = (currentBest.getScore() + "").toCharArray();
+
+		LevelEvent.record(LevelEvent.START, this);
 	}
 
 	/**
@@ -387,13 +990,119 @@ public class Game extends JPanel {
 	}
 
 	/**
-	 * Starts the game
+	 * Starts the game. The optional arguments are
+	 *
+	 * -headless ticks  run that many time steps without a display and report
+	 *                  how fast they ran
+	 * -seed seed       the seed for the games random decisions
+	 * -record file     record the keys pressed to a file
+	 * -replay file     play back the keys in a recording, using its seed
+	 * -overlay         draw frame timings over the stage
+	 * -invaders count  play swarm mode with this many invaders
+	 * -tanks count     play swarm mode with this many tanks
+	 * -threads count   move the tanks and drones on this many threads,
+	 *                  every core by default
 	 *
-	 * @param args No current use
+	 * @param args The optional arguments
 	 */
-	public static void main(String[] args) {
-		Game game = new Game();
+	public static void main(String[] args) throws IOException {
+
+		long ticks = -1;
+		long seed = System.nanoTime();
+		String recordFile = null;
+		String replayFile = null;
+		boolean overlay = false;
+		int swarmInvaders = 1;
+		int swarmTanks = 1;
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		for(int i = 0; i < args.length; i++) {
+			if(args[i].equals("-overlay")) {
+				overlay = true;
+			} else if(i + 1 == args.length) {
+				System.err.println("Expected a value after " + args[i]);
+				System.exit(1);
+			} else if(args[i].equals("-headless")) {
+				ticks = Long.parseLong(args[++i]);
+			} else if(args[i].equals("-seed")) {
+				seed = Long.parseLong(args[++i]);
+			} else if(args[i].equals("-record")) {
+				recordFile = args[++i];
+			} else if(args[i].equals("-replay")) {
+				replayFile = args[++i];
+			} else if(args[i].equals("-invaders")) {
+				swarmInvaders = Integer.parseInt(args[++i]);
+			} else if(args[i].equals("-tanks")) {
+				swarmTanks = Integer.parseInt(args[++i]);
+			} else if(args[i].equals("-threads")) {
+				threads = Integer.parseInt(args[++i]);
+			}
+		}
+
+		if(ticks >= 0) {
+			System.setProperty("java.awt.headless", "true");
+		}
+
+		//Start decoding every sprite while the game and window are set up
+
+		AssetLoader assets = null;
+
+		if(ticks < 0) {
+			assets = new AssetLoader("sprites/").start();
+		}
+
+		//Set up the game, taking the seed and time step from any recording
+
+		InputReplay replay = null;
+
+		if(replayFile != null) {
+			replay = new InputReplay(new BufferedInputStream(new FileInputStream(replayFile)));
+			seed = replay.getSeed();
+		}
+
+		Game game = new Game(seed);
+		game.scheduler.setThreads(threads);
+
+		if(swarmInvaders > 1 || swarmTanks > 1) {
+			game.setSwarm(swarmInvaders, swarmTanks);
+		}
+		game.metrics.setOverlayShown(overlay);
+		game.metrics.register();
+
+		if(replay != null) {
+			game.setStep(replay.getStep());
+			game.setInputReplay(replay);
+		}
+
+		if(recordFile != null) {
+			final InputRecorder recorder = new InputRecorder(new BufferedOutputStream(new FileOutputStream(recordFile)), seed, game.getStep());
+			game.setInputRecorder(recorder);
+
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				public void run() {
+					recorder.close();
+				}
+			});
+		}
+
+		if(ticks >= 0) {
+			game.setAutoAdvance(true);
+
+			long started = System.nanoTime();
+			game.runHeadless(ticks);
+			double seconds = (System.nanoTime() - started) / 1000000000.0;
+
+			System.out.println(ticks + " ticks in " + seconds + "s (" + (long) (ticks / seconds) + " ticks/s)");
+			System.out.println("Level " + game.currentLevel.getScore() + ", score " + game.currentScore.getScore());
+
+			Histogram update = game.metrics.update;
+			System.out.println("Update ns p50 " + update.getP50() + ", p99 " + update.getP99() + ", p99.9 " + update.getP999() + ", max " + update.getMax());
+			System.out.println(game.metrics.getShellsFired() + " shells fired, " + game.metrics.getCollisionsTested() + " collisions tested, " + game.metrics.getSpritesDecoded() + " sprites decoded");
+			return;
+		}
+
+		game.setAssets(assets);
+		new GameScreen(game);
 		game.start();
 	}
 }
-
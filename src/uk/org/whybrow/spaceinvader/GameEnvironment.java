@@ -0,0 +1,445 @@
+
+package uk.org.whybrow.spaceinvader;
+
+/**
+ * Lets a program learn to play the invader, in the usual shape of a
+ * reinforcement learning environment. reset() starts an episode, then each
+ * step() takes an action, runs the game and gives back the reward, after
+ * which the observation holds the stage as numbers.
+ *
+ * An action is the keys held for the step, any of ACTION_LEFT, ACTION_RIGHT
+ * and ACTION_POWER added together, so there are ACTIONS different actions.
+ * The reward is how much the score changed during the step, the points for
+ * each drop and pick up, the points lost for each hit and anything given at
+ * the end of a level. An episode ends once a number of levels have been
+ * completed, or is cut short after a number of steps, as the invader can
+ * dodge forever without landing.
+ *
+ * The observation is a fixed number of floats laid out as the constants
+ * below say, positions in pixels and speeds in pixels per second. It only
+ * holds the nearest MAX_SHELLS shells, nearest first, with the rest of the
+ * shell slots zero. In swarm mode only the first tank and the player's
+ * invader are seen.
+ *
+ * reset() makes a new game each episode. Stepping, observing and the game
+ * logic under them reuse everything they use from step to step, so the
+ * only things a step makes are new entities: a pop up for each hit, drop or
+ * pick up, and a power up when a tank releases one. That comes to well
+ * under a byte a step on average, around 13 KB over a 20000 step episode,
+ * so the garbage collector has next to nothing to do while training.
+ *
+ * @author Marcus Whybrow
+ */
+public class GameEnvironment {
+
+	/** Hold the left key **/
+	public static final int ACTION_LEFT = 1;
+	/** Hold the right key **/
+	public static final int ACTION_RIGHT = 2;
+	/** Hold the space key, using any power up **/
+	public static final int ACTION_POWER = 4;
+	/** The number of different actions **/
+	public static final int ACTIONS = 8;
+
+	/** The horizontal position of the invader **/
+	public static final int INVADER_X = 0;
+	/** The vertical position of the invader **/
+	public static final int INVADER_Y = 1;
+	/** The horizontal speed of the invader **/
+	public static final int INVADER_VX = 2;
+	/** The vertical speed of the invader **/
+	public static final int INVADER_VY = 3;
+	/** The horizontal position of the tank **/
+	public static final int TANK_X = 4;
+	/** The vertical position of the tank **/
+	public static final int TANK_Y = 5;
+	/** The horizontal speed of the tank **/
+	public static final int TANK_VX = 6;
+	/** The power up the invader holds, as in InvaderEntity **/
+	public static final int POWER_UP = 7;
+	/** 1 if the invader's shield is on, otherwise 0 **/
+	public static final int SHIELD_ON = 8;
+	/** The energy left for the power up, 0 to 100 **/
+	public static final int ENERGY = 9;
+	/** The power up nearest the invader on the stage, as in InvaderEntity, 0 for none **/
+	public static final int FALLING_POWER_UP = 10;
+	/** The horizontal position of the nearest power up on the stage **/
+	public static final int FALLING_POWER_UP_X = 11;
+	/** The vertical position of the nearest power up on the stage **/
+	public static final int FALLING_POWER_UP_Y = 12;
+	/** The level being played **/
+	public static final int LEVEL = 13;
+	/** The number of live shells, including those not in the observation **/
+	public static final int SHELL_COUNT = 14;
+	/** Where the shells start, each is SHELL_FIELDS floats, x, y, speed x and speed y **/
+	public static final int SHELLS = 15;
+	/** The number of floats for each shell **/
+	public static final int SHELL_FIELDS = 4;
+	/** The most shells in an observation **/
+	public static final int MAX_SHELLS = 32;
+	/** The number of floats in an observation **/
+	public static final int OBSERVATION_SIZE = SHELLS + MAX_SHELLS * SHELL_FIELDS;
+
+	/** How hard each level is **/
+	private Difficulty difficulty;
+	/** The game being played, null until the first reset **/
+	private Game game;
+
+	/** Where the observation is written **/
+	private float[] observation;
+	/** Where in the observation array this environment's observation starts **/
+	private int offset;
+
+	/** The number of game logic steps each step runs for **/
+	private int actionRepeat = 1;
+	/** The number of levels to complete in each episode **/
+	private int levels = 1;
+	/** The most steps in an episode before it is cut short, 0 for no limit **/
+	private long maxSteps = 20000;
+
+	/** The score at the end of the last step **/
+	private long score;
+	/** The number of steps in this episode so far **/
+	private long steps;
+	/** The number of levels completed in this episode **/
+	private int completed;
+	/** The status of the game at the end of the last game logic step **/
+	private int status;
+	/** True once enough levels have been completed **/
+	private boolean terminated;
+	/** True once the episode has been cut short **/
+	private boolean truncated;
+
+	/** The shells nearest the invader, nearest first, while observing **/
+	private int[] nearest = new int[MAX_SHELLS];
+	/** The square of the distance to each of the nearest shells **/
+	private double[] nearestDistance = new double[MAX_SHELLS];
+
+	/**
+	 * Create an environment with the usual difficulty
+	 *
+	 */
+	public GameEnvironment() {
+
+		this(new Difficulty());
+	}
+
+	/**
+	 * Create an environment
+	 *
+	 * @param difficulty How hard each level is
+	 */
+	public GameEnvironment(Difficulty difficulty) {
+
+		this(difficulty, new float[OBSERVATION_SIZE], 0);
+	}
+
+	/**
+	 * Create an environment that writes its observation into part of a
+	 * larger array, shared with other environments
+	 *
+	 * @param difficulty How hard each level is
+	 * @param observation The array to write the observation into
+	 * @param offset Where in the array the observation starts
+	 */
+	GameEnvironment(Difficulty difficulty, float[] observation, int offset) {
+
+		this.difficulty = difficulty;
+		this.observation = observation;
+		this.offset = offset;
+	}
+
+	/**
+	 * Set the number of game logic steps each step runs for, holding the
+	 * same keys throughout, takes effect from the next step
+	 *
+	 * @param actionRepeat The number of game logic steps, at least 1
+	 */
+	public void setActionRepeat(int actionRepeat) {
+
+		this.actionRepeat = Math.max(1, actionRepeat);
+	}
+
+	/**
+	 * Set the number of levels to complete in each episode, takes effect from
+	 * the next reset
+	 *
+	 * @param levels The number of levels, at least 1
+	 */
+	public void setLevels(int levels) {
+
+		this.levels = Math.max(1, levels);
+	}
+
+	/**
+	 * Set the most steps in an episode before it is cut short, takes effect
+	 * from the next reset
+	 *
+	 * @param maxSteps The number of steps, 0 for no limit
+	 */
+	public void setMaxSteps(long maxSteps) {
+
+		this.maxSteps = Math.max(0, maxSteps);
+	}
+
+	/**
+	 * Start a new episode, with a new game, and observe the start of the
+	 * first level
+	 *
+	 * @param seed The seed of the game, episodes with the same seed and
+	 *             actions play out the same
+	 * @return The observation, which is reused by every step
+	 */
+	public float[] reset(long seed) {
+
+		game = new Game(seed, difficulty);
+		game.setAutoAdvance(true);
+		game.scheduler.setThreads(1);
+
+		//Move past the start screen
+
+		while(game.status != Game.LEVEL_IN_PROGRESS) {
+			game.update(game.getStep());
+		}
+
+		score = game.currentScore.getScore();
+		status = game.status;
+		steps = 0;
+		completed = 0;
+		terminated = false;
+		truncated = false;
+
+		observe();
+		return observation;
+	}
+
+	/**
+	 * Hold the keys of an action while running the game for a step, then
+	 * observe the stage
+	 *
+	 * @param action The keys to hold, any of the ACTION constants added
+	 * @return The change in score during the step
+	 * @throws IllegalStateException If the episode is over or was never reset
+	 */
+	public double step(int action) {
+
+		if(game == null || terminated || truncated) {
+			throw new IllegalStateException("The episode is over, reset first");
+		}
+
+		Keyboard keyboard = game.keyboard;
+		keyboard.setPressed(Keyboard.LEFT, (action & ACTION_LEFT) != 0);
+		keyboard.setPressed(Keyboard.RIGHT, (action & ACTION_RIGHT) != 0);
+		keyboard.setPressed(Keyboard.SPACE, (action & ACTION_POWER) != 0);
+
+		for(int i = 0; i < actionRepeat && !terminated; i++) {
+
+			game.update(game.getStep());
+
+			//Count each level as it is completed
+
+			if(game.status != status) {
+				status = game.status;
+
+				if(status == Game.LEVEL_COMPLETE && ++completed >= levels) {
+					terminated = true;
+				}
+			}
+		}
+
+		steps++;
+
+		if(!terminated && maxSteps > 0 && steps >= maxSteps) {
+			truncated = true;
+		}
+
+		long previous = score;
+		score = game.currentScore.getScore();
+
+		observe();
+		return score - previous;
+	}
+
+	/**
+	 * Check whether the episode ended by completing enough levels
+	 *
+	 * @return True if the episode is over
+	 */
+	public boolean isTerminated() {
+
+		return terminated;
+	}
+
+	/**
+	 * Check whether the episode was cut short after too many steps
+	 *
+	 * @return True if the episode is over
+	 */
+	public boolean isTruncated() {
+
+		return truncated;
+	}
+
+	/**
+	 * Get the observation after the last step or reset
+	 *
+	 * @return The array the observation is in, starting at getOffset()
+	 */
+	public float[] getObservation() {
+
+		return observation;
+	}
+
+	/**
+	 * Get where in the observation array the observation starts
+	 *
+	 * @return The offset
+	 */
+	public int getOffset() {
+
+		return offset;
+	}
+
+	/**
+	 * Get the game being played, to look at anything not in the observation
+	 *
+	 * @return The game, null until the first reset
+	 */
+	public Game getGame() {
+
+		return game;
+	}
+
+	/**
+	 * Write the stage into the observation
+	 *
+	 */
+	private void observe() {
+
+		float[] o = observation;
+		InvaderEntity invader = game.invader;
+		TankEntity tank = game.tank;
+
+		o[offset + INVADER_X] = invader.getX();
+		o[offset + INVADER_Y] = invader.getY();
+		o[offset + INVADER_VX] = speedX(invader);
+		o[offset + INVADER_VY] = speedY(invader);
+		o[offset + TANK_X] = tank.getX();
+		o[offset + TANK_Y] = tank.getY();
+		o[offset + TANK_VX] = speedX(tank);
+		o[offset + POWER_UP] = invader.getPowerup();
+		o[offset + SHIELD_ON] = invader.getShieldIsOn() ? 1 : 0;
+		o[offset + ENERGY] = (float) game.energy.getEnergy();
+		o[offset + LEVEL] = game.currentLevel.getScore();
+
+		int invaderX = invader.getX() + invader.getSprite().getWidth(null) / 2;
+		int invaderY = invader.getY() + invader.getSprite().getHeight(null) / 2;
+
+		//The power up falling nearest the invader
+
+		PowerEntity power = null;
+		double powerDistance = Double.MAX_VALUE;
+
+		for(int i = 0; i < game.entities.size(); i++) {
+			Entity entity = game.entities.get(i);
+
+			if(entity instanceof PowerEntity && !entity.removed) {
+				double distance = distance(entity.getX() - invaderX, entity.getY() - invaderY);
+
+				if(distance < powerDistance) {
+					power = (PowerEntity) entity;
+					powerDistance = distance;
+				}
+			}
+		}
+
+		if(power != null) {
+			o[offset + FALLING_POWER_UP] = power.isSpeed() ? InvaderEntity.SPEED_BOOST : InvaderEntity.PULSE_SHIELD;
+			o[offset + FALLING_POWER_UP_X] = power.getX();
+			o[offset + FALLING_POWER_UP_Y] = power.getY();
+		} else {
+			o[offset + FALLING_POWER_UP] = InvaderEntity.NO_POWERUP;
+			o[offset + FALLING_POWER_UP_X] = 0;
+			o[offset + FALLING_POWER_UP_Y] = 0;
+		}
+
+		//Keep the nearest shells in order, by moving each one closer than
+		//the furthest kept into place
+
+		ShellStore shells = game.shells;
+		int kept = 0;
+
+		for(int i = 0; i < shells.size(); i++) {
+
+			double distance = distance(shells.getX(i) - invaderX, shells.getY(i) - invaderY);
+
+			if(kept == MAX_SHELLS && distance >= nearestDistance[kept - 1]) {
+				continue;
+			}
+
+			int j = (kept < MAX_SHELLS) ? kept++ : kept - 1;
+
+			while(j > 0 && nearestDistance[j - 1] > distance) {
+				nearest[j] = nearest[j - 1];
+				nearestDistance[j] = nearestDistance[j - 1];
+				j--;
+			}
+
+			nearest[j] = i;
+			nearestDistance[j] = distance;
+		}
+
+		o[offset + SHELL_COUNT] = shells.size();
+
+		for(int i = 0; i < MAX_SHELLS; i++) {
+
+			int at = offset + SHELLS + i * SHELL_FIELDS;
+
+			if(i < kept) {
+				int shell = nearest[i];
+				o[at] = (float) shells.getX(shell);
+				o[at + 1] = (float) shells.getY(shell);
+				o[at + 2] = (float) shells.getVelocityX(shell);
+				o[at + 3] = (float) shells.getVelocityY(shell);
+			} else {
+				o[at] = o[at + 1] = o[at + 2] = o[at + 3] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Work out how fast an entity moved horizontally during the last game
+	 * logic step
+	 *
+	 * @param entity The entity
+	 * @return The speed in pixels per second
+	 */
+	private float speedX(Entity entity) {
+
+		return (entity.store.x[entity.row] - entity.store.prevX[entity.row]) * 1000f / game.getStep();
+	}
+
+	/**
+	 * Work out how fast an entity moved vertically during the last game
+	 * logic step
+	 *
+	 * @param entity The entity
+	 * @return The speed in pixels per second
+	 */
+	private float speedY(Entity entity) {
+
+		return (entity.store.y[entity.row] - entity.store.prevY[entity.row]) * 1000f / game.getStep();
+	}
+
+	/**
+	 * Get the square of a distance, for comparing distances
+	 *
+	 * @param x The horizontal distance
+	 * @param y The vertical distance
+	 * @return The square of the distance
+	 */
+	private static double distance(double x, double y) {
+
+		return x * x + y * y;
+	}
+}
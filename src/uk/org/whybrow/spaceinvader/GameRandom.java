@@ -0,0 +1,86 @@
+
+package uk.org.whybrow.spaceinvader;
+
+/**
+ * A small, fast random number generator that every random decision in a game
+ * is taken from, so that a game started with the same seed plays out the same
+ * way every time.
+ *
+ * Unlike Math.random() there is no shared, synchronised generator behind it.
+ * It is not thread safe, instead each game (or each entity that rolls dice
+ * often) owns its own generator, and new independent generators are split
+ * off from an existing one. Splitting is deterministic, so a whole tree of
+ * generators can be rebuilt from the one seed.
+ *
+ * The numbers come from the SplitMix64 algorithm. It is written out here,
+ * rather than using java.util.SplittableRandom, because recordings and
+ * seeds rely on the exact numbers, including those of split() and
+ * nextInt(). SplittableRandom only promises its algorithm, not those
+ * details, and it already splits and bounds differently to this.
+ *
+ * @author Marcus Whybrow
+ */
+public class GameRandom {
+
+	/** The golden ratio increment added to the state each step **/
+	private static final long GAMMA = 0x9e3779b97f4a7c15L;
+
+	/** The current state of the generator **/
+	private long state;
+
+	/**
+	 * Create a generator from a seed
+	 *
+	 * @param seed The seed, the same seed always gives the same numbers
+	 */
+	public GameRandom(long seed) {
+
+		state = seed;
+	}
+
+	/**
+	 * Get the next 64 random bits
+	 *
+	 * @return A random long
+	 */
+	public long nextLong() {
+
+		long z = (state += GAMMA);
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Get a random number between 0 (inclusive) and 1 (exclusive), a drop in
+	 * replacement for Math.random()
+	 *
+	 * @return A random double from 0 to 1
+	 */
+	public double nextDouble() {
+
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * Get a random whole number between 0 (inclusive) and bound (exclusive)
+	 *
+	 * @param bound The upper bound, must be positive
+	 * @return A random int from 0 to bound
+	 */
+	public int nextInt(int bound) {
+
+		return (int) ((nextLong() >>> 33) * bound >>> 31);
+	}
+
+	/**
+	 * Create a new generator whose numbers are independent of this one, this
+	 * generator moves on as a result
+	 *
+	 * @return A new generator
+	 */
+	public GameRandom split() {
+
+		return new GameRandom(nextLong());
+	}
+}
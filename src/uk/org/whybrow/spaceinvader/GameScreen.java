@@ -0,0 +1,132 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import javax.swing.JFrame;
+import java.awt.AWTException;
+import java.awt.BufferCapabilities;
+import java.awt.Canvas;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.ImageCapabilities;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+
+/**
+ * The window the game is shown in. Rather than waiting for Swing to repaint,
+ * the render thread calls render() once per frame which draws straight into
+ * the back buffer of a BufferStrategy and then shows it.
+ *
+ * Page flipping is asked for first, if the platform cannot do that in a
+ * window the default strategy is used, which blits from an accelerated
+ * VolatileImage back buffer where the hardware supports it. Either way the
+ * back buffer can lose its contents (for example when the display mode
+ * changes), so each frame is redrawn until it has been shown intact.
+ *
+ * @author Marcus Whybrow
+ */
+public class GameScreen extends Canvas {
+
+	/** The number of buffers to use, one front and one back **/
+	private static final int BUFFERS = 2;
+
+	/** The game drawn to this screen **/
+	private Game game;
+	/** The JFrame that contains the game **/
+	private JFrame frame;
+	/** The buffers drawn into and then shown **/
+	private BufferStrategy strategy;
+
+	/**
+	 * Create the game window, show it and begin drawing the given game to it
+	 *
+	 * @param game The game to draw
+	 */
+	public GameScreen(Game game) {
+
+		this.game = game;
+
+		//Size the canvas to the background and stop AWT from painting it
+
+		setPreferredSize( new Dimension(game.image.getWidth(null), game.image.getHeight(null)) );
+		setIgnoreRepaint(true);
+
+		//Enable the keyboard untility class
+
+		game.keyboard.init(this);
+
+		//JFrame operations to behave normaly
+
+		frame = new JFrame();
+		frame.setTitle("The Last Space Invader");
+		frame.setIgnoreRepaint(true);
+		frame.add(this);
+		frame.pack();
+		frame.setVisible(true);
+		frame.setDefaultCloseOperation(frame.EXIT_ON_CLOSE);
+		frame.setResizable(false);
+
+		//The buffer strategy can only be created once the canvas is showing
+
+		createStrategy();
+
+		requestFocus();
+		game.setScreen(this);
+	}
+
+	/**
+	 * Create the buffer strategy, trying accelerated page flipping first
+	 */
+	private void createStrategy() {
+
+		ImageCapabilities accelerated = new ImageCapabilities(true);
+
+		try {
+			createBufferStrategy(BUFFERS, new BufferCapabilities(accelerated, accelerated, BufferCapabilities.FlipContents.UNDEFINED));
+		} catch(AWTException e) {
+			createBufferStrategy(BUFFERS);
+		}
+
+		strategy = getBufferStrategy();
+	}
+
+	/**
+	 * Draw a single frame of the game and show it, should only be called by
+	 * the render thread
+	 *
+	 * @param snapshot The snapshot of the stage to draw
+	 * @param alpha How far between the last two game logic steps to draw, 0 to 1
+	 */
+	public void render(FrameSnapshot snapshot, double alpha) {
+
+		LoopPhaseEvent present;
+
+		do {
+			do {
+
+				//Draw the whole stage into the back buffer
+
+				Graphics2D g2 = (Graphics2D) strategy.getDrawGraphics();
+
+				try {
+					game.draw(g2, snapshot, alpha);
+				} finally {
+					g2.dispose();
+				}
+
+				//Redraw if the buffer was restored while we were drawing
+
+			} while(strategy.contentsRestored());
+
+			present = LoopPhaseEvent.start(LoopPhaseEvent.PRESENT, snapshot.getTick());
+			strategy.show();
+
+			//Redraw if the buffer was lost before it could be shown
+
+		} while(strategy.contentsLost());
+
+		//Make sure the frame reaches the display without being queued
+
+		Toolkit.getDefaultToolkit().sync();
+		LoopPhaseEvent.end(present);
+	}
+}
@@ -0,0 +1,312 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+import java.util.ArrayList;
+
+/**
+ * Draws text by copying pre-drawn characters out of a single image. The
+ * printable ASCII characters of a font are drawn once, in one colour, into
+ * the atlas image, after which drawing text is just a copy per character,
+ * with no TextLayout, String or glyph objects created.
+ *
+ * Atlases are shared, get() returns the same atlas every time it is asked
+ * for the same font and colour. If text antialiasing has been turned off on
+ * the graphics context being drawn to, the characters are copied from a
+ * second image drawn without antialiasing, which is only drawn the first
+ * time it is needed. An atlas can be drawn from by any number of threads at
+ * once, so get() should be called once and the atlas kept, rather than
+ * looked up each frame. Text to draw is given as a char array, and
+ * format() writes a number into a char array without creating a String, so
+ * text only needs laying out again when the value it shows changes.
+ *
+ * @author Marcus Whybrow
+ */
+public class GlyphAtlas {
+
+	/** The first character held in an atlas **/
+	private static final char FIRST = 32;
+	/** The last character held in an atlas **/
+	private static final char LAST = 126;
+	/** Space left around each character so nothing overlaps its neighbours **/
+	private static final int PADDING = 2;
+
+	/** Every atlas created so far **/
+	private static ArrayList <GlyphAtlas>atlases = new ArrayList();
+
+	/** The font the characters are drawn in **/
+	private Font font;
+	/** The colour the characters are drawn in **/
+	private Color colour;
+	/** The image holding every character **/
+	private BufferedImage image;
+	/** The image holding every character drawn without antialiasing, null until needed **/
+	private volatile BufferedImage plainImage;
+	/** The outline of every character, kept for drawing the plain image **/
+	private GlyphVector[] glyphs = new GlyphVector[LAST - FIRST + 1];
+
+	/** The height of each character cell in the image **/
+	private int cellHeight;
+	/** The distance from the top of a cell down to the baseline **/
+	private int baseline;
+	/** The left of each characters cell in the image **/
+	private int[] cellX = new int[LAST - FIRST + 1];
+	/** The width of each characters cell in the image **/
+	private int[] cellWidth = new int[LAST - FIRST + 1];
+	/** The distance to move along after each character **/
+	private int[] advance = new int[LAST - FIRST + 1];
+	/** The top of each characters ink, relative to the baseline **/
+	private int[] inkTop = new int[LAST - FIRST + 1];
+	/** The bottom of each characters ink, relative to the baseline **/
+	private int[] inkBottom = new int[LAST - FIRST + 1];
+
+	/**
+	 * Get the atlas for a font and colour, drawing it if it does not exist yet
+	 *
+	 * @param font The font to draw text in
+	 * @param colour The colour to draw text in
+	 * @return The shared atlas
+	 */
+	public static synchronized GlyphAtlas get(Font font, Color colour) {
+
+		for(int i = 0; i < atlases.size(); i++) {
+			GlyphAtlas atlas = atlases.get(i);
+
+			if(atlas.font.equals(font) && atlas.colour.equals(colour)) {
+				return atlas;
+			}
+		}
+
+		GlyphAtlas atlas = new GlyphAtlas(font, colour);
+		atlases.add(atlas);
+		return atlas;
+	}
+
+	/**
+	 * Draw every character into a new atlas image
+	 *
+	 * @param font The font to draw text in
+	 * @param colour The colour to draw text in
+	 */
+	private GlyphAtlas(Font font, Color colour) {
+
+		this.font = font;
+		this.colour = colour;
+
+		FontRenderContext frc = new FontRenderContext(null, true, false);
+
+		//Measure every character, laying the cells out in a single row
+
+		int top = 0, bottom = 0, width = 0;
+
+		for(char c = FIRST; c <= LAST; c++) {
+
+			int i = c - FIRST;
+
+			glyphs[i] = font.createGlyphVector(frc, String.valueOf(c));
+			Rectangle2D ink = glyphs[i].getVisualBounds();
+
+			advance[i] = (int) Math.round(glyphs[i].getGlyphMetrics(0).getAdvance());
+			inkTop[i] = (int) Math.floor(ink.getMinY());
+			inkBottom[i] = (int) Math.ceil(ink.getMaxY());
+
+			cellX[i] = width;
+			cellWidth[i] = Math.max(advance[i], (int) Math.ceil(ink.getMaxX())) + PADDING * 2;
+			width += cellWidth[i];
+
+			top = Math.min(top, inkTop[i]);
+			bottom = Math.max(bottom, inkBottom[i]);
+		}
+
+		baseline = PADDING - top;
+		cellHeight = baseline + bottom + PADDING;
+
+		//Draw every character into its cell
+
+		image = drawCells(width, true);
+	}
+
+	/**
+	 * Draw every character into its cell of a new image
+	 *
+	 * @param width The width of the image
+	 * @param antialiased True to draw the characters with antialiasing
+	 * @return The image
+	 */
+	private BufferedImage drawCells(int width, boolean antialiased) {
+
+		BufferedImage cells = new BufferedImage(width, cellHeight, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g2 = cells.createGraphics();
+
+		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+				antialiased ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+		g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+				antialiased ? RenderingHints.VALUE_TEXT_ANTIALIAS_ON : RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+		g2.setColor(colour);
+
+		for(int i = 0; i < glyphs.length; i++) {
+			g2.drawGlyphVector(glyphs[i], cellX[i] + PADDING, baseline);
+		}
+
+		g2.dispose();
+		return cells;
+	}
+
+	/**
+	 * Draw text from the atlas
+	 *
+	 * @param g2 The graphics context to draw to
+	 * @param text The characters to draw
+	 * @param length The number of characters to draw
+	 * @param x The horizontal position of the start of the text
+	 * @param y The vertical position of the baseline of the text
+	 * @return The horizontal position after the last character
+	 */
+	public int draw(Graphics2D g2, char[] text, int length, int x, int y) {
+
+		return draw(g2, text, 0, length, x, y);
+	}
+
+	/**
+	 * Draw part of an array of characters from the atlas
+	 *
+	 * @param g2 The graphics context to draw to
+	 * @param text The characters to draw
+	 * @param offset The first character to draw
+	 * @param length The number of characters to draw
+	 * @param x The horizontal position of the start of the text
+	 * @param y The vertical position of the baseline of the text
+	 * @return The horizontal position after the last character
+	 */
+	public int draw(Graphics2D g2, char[] text, int offset, int length, int x, int y) {
+
+		int top = y - baseline;
+		BufferedImage cells = image;
+
+		//Use the plain characters if text antialiasing is off. Two threads
+		//may both draw them the first time, but either image will do and
+		//each is only seen once it is fully drawn
+
+		if(g2.getRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING) == RenderingHints.VALUE_TEXT_ANTIALIAS_OFF) {
+			cells = plainImage;
+			if(cells == null) {
+				cells = drawCells(image.getWidth(), false);
+				plainImage = cells;
+			}
+		}
+
+		for(int n = offset; n < offset + length; n++) {
+
+			int i = index(text[n]);
+			int left = x - PADDING;
+
+			g2.drawImage(cells, left, top, left + cellWidth[i], top + cellHeight,
+					cellX[i], 0, cellX[i] + cellWidth[i], cellHeight, null);
+
+			x += advance[i];
+		}
+
+		return x;
+	}
+
+	/**
+	 * Get the width of some text
+	 *
+	 * @param text The characters to measure
+	 * @param length The number of characters to measure
+	 * @return The width of the text
+	 */
+	public int getWidth(char[] text, int length) {
+
+		int width = 0;
+
+		for(int n = 0; n < length; n++) {
+			width += advance[index(text[n])];
+		}
+
+		return width;
+	}
+
+	/**
+	 * Get the height of the ink of some text, from the top of the tallest
+	 * character to the bottom of the lowest
+	 *
+	 * @param text The characters to measure
+	 * @param length The number of characters to measure
+	 * @return The height of the text
+	 */
+	public int getHeight(char[] text, int length) {
+
+		int top = 0, bottom = 0;
+
+		for(int n = 0; n < length; n++) {
+			int i = index(text[n]);
+			top = Math.min(top, inkTop[i]);
+			bottom = Math.max(bottom, inkBottom[i]);
+		}
+
+		return bottom - top;
+	}
+
+	/**
+	 * Get the cell of a character, characters not in the atlas are drawn as
+	 * a space
+	 *
+	 * @param c The character
+	 * @return The index of its cell
+	 */
+	private int index(char c) {
+
+		return (c < FIRST || c > LAST) ? 0 : c - FIRST;
+	}
+
+	/**
+	 * Write a number into a char array, the same as it would be printed
+	 *
+	 * @param value The number to write
+	 * @param text The array to write into, at least 20 characters long
+	 * @return The number of characters written
+	 */
+	public static int format(long value, char[] text) {
+
+		if(value == Long.MIN_VALUE) {
+			String digits = Long.toString(value);
+			digits.getChars(0, digits.length(), text, 0);
+			return digits.length();
+		}
+
+		int length = 0;
+		boolean negative = value < 0;
+
+		if(negative) {
+			value = -value;
+		}
+
+		//Write the digits backwards, then reverse them
+
+		do {
+			text[length++] = (char) ('0' + value % 10);
+			value /= 10;
+		} while(value > 0);
+
+		if(negative) {
+			text[length++] = '-';
+		}
+
+		for(int i = 0, j = length - 1; i < j; i++, j--) {
+			char c = text[i];
+			text[i] = text[j];
+			text[j] = c;
+		}
+
+		return length;
+	}
+}
@@ -0,0 +1,213 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import java.util.Arrays;
+
+/**
+ * Counts how often values are recorded, for working out percentiles such as
+ * the 99th percentile frame time without keeping every value.
+ *
+ * Values are counted in buckets that get wider as values get larger. Each
+ * power of two is split into 32 equal buckets, so any percentile is reported
+ * to within about 3% of the true value, whatever size the values are. The
+ * buckets are allocated once up front and recording a value is a few shifts
+ * and an array increment, so it can be done every frame.
+ *
+ * Values are recorded on one thread and can be read from any other, for
+ * example over JMX while the game is running.
+ *
+ * @author Marcus Whybrow
+ */
+public class Histogram implements HistogramMBean {
+
+	/** The number of bits each power of two is split into buckets with **/
+	private static final int SUB_BITS = 5;
+	/** The number of buckets each power of two is split into **/
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	/** What the values are measured in, for showing alongside them **/
+	private String unit;
+
+	/** The number of values recorded into each bucket **/
+	private long[] counts = new long[(64 - SUB_BITS) * SUB_BUCKETS];
+	/** The number of values recorded **/
+	private long count = 0;
+	/** The total of every value recorded **/
+	private long total = 0;
+	/** The largest value recorded **/
+	private long max = 0;
+
+	/**
+	 * Create an empty histogram
+	 *
+	 * @param unit What the values are measured in
+	 */
+	public Histogram(String unit) {
+
+		this.unit = unit;
+	}
+
+	/**
+	 * Record a value, negative values are recorded as 0
+	 *
+	 * @param value The value to record
+	 */
+	public synchronized void record(long value) {
+
+		if(value < 0) {
+			value = 0;
+		}
+
+		counts[bucket(value)]++;
+		count++;
+		total += value;
+
+		if(value > max) {
+			max = value;
+		}
+	}
+
+	/**
+	 * Get a percentile of the values recorded
+	 *
+	 * @param percentile The percentile, from 0 to 100
+	 * @return The largest value in the bucket the percentile falls in, or 0
+	 *         if nothing has been recorded
+	 */
+	public synchronized long getPercentile(double percentile) {
+
+		if(count == 0) {
+			return 0;
+		}
+
+		long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+
+		for(int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+
+			if(seen >= target) {
+				return Math.min(highest(i), max);
+			}
+		}
+
+		return max;
+	}
+
+	/**
+	 * Get the value half of all values are at or below
+	 *
+	 * @return The 50th percentile
+	 */
+	public long getP50() {
+
+		return getPercentile(50);
+	}
+
+	/**
+	 * Get the value 99% of all values are at or below
+	 *
+	 * @return The 99th percentile
+	 */
+	public long getP99() {
+
+		return getPercentile(99);
+	}
+
+	/**
+	 * Get the value 99.9% of all values are at or below
+	 *
+	 * @return The 99.9th percentile
+	 */
+	public long getP999() {
+
+		return getPercentile(99.9);
+	}
+
+	/**
+	 * Get the largest value recorded
+	 *
+	 * @return The largest value
+	 */
+	public synchronized long getMax() {
+
+		return max;
+	}
+
+	/**
+	 * Get the average of the values recorded
+	 *
+	 * @return The mean, or 0 if nothing has been recorded
+	 */
+	public synchronized double getMean() {
+
+		return (count == 0) ? 0 : (double) total / count;
+	}
+
+	/**
+	 * Get the number of values recorded
+	 *
+	 * @return The number of values
+	 */
+	public synchronized long getCount() {
+
+		return count;
+	}
+
+	/**
+	 * Get what the values are measured in
+	 *
+	 * @return The unit
+	 */
+	public String getUnit() {
+
+		return unit;
+	}
+
+	/**
+	 * Forget every value recorded so far
+	 *
+	 */
+	public synchronized void reset() {
+
+		Arrays.fill(counts, 0);
+		count = 0;
+		total = 0;
+		max = 0;
+	}
+
+	/**
+	 * Work out which bucket a value is counted in
+	 *
+	 * @param value The value, not negative
+	 * @return The bucket
+	 */
+	private static int bucket(long value) {
+
+		if(value < SUB_BUCKETS) {
+			return (int) value;
+		}
+
+		//Keep the top bits of the value below its highest set bit
+
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+	}
+
+	/**
+	 * Work out the largest value counted in a bucket
+	 *
+	 * @param bucket The bucket
+	 * @return The largest value
+	 */
+	private static long highest(int bucket) {
+
+		if(bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+
+		int shift = bucket / SUB_BUCKETS - 1;
+		long sub = bucket % SUB_BUCKETS + SUB_BUCKETS;
+		return ((sub + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,26 @@
+
+package uk.org.whybrow.spaceinvader;
+
+/**
+ * The parts of a Histogram that can be seen and used over JMX
+ *
+ * @author Marcus Whybrow
+ */
+public interface HistogramMBean {
+
+	public long getP50();
+
+	public long getP99();
+
+	public long getP999();
+
+	public long getMax();
+
+	public double getMean();
+
+	public long getCount();
+
+	public String getUnit();
+
+	public void reset();
+}
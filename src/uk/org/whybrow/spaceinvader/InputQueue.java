@@ -0,0 +1,143 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A queue of timestamped key presses and releases, passed from the thread
+ * that receives them from AWT to the thread running the game logic.
+ *
+ * Exactly one thread may add to the queue and exactly one other thread may
+ * take from it, which lets it work without locks. Entries are kept in a
+ * fixed ring of arrays, the adding thread only ever moves the tail and the
+ * taking thread only ever moves the head. Moving the tail after writing an
+ * entry publishes that entry to the taking thread, and moving the head after
+ * reading one hands its space back to the adding thread.
+ *
+ * If the game logic falls so far behind that the queue fills up, further
+ * key changes are dropped and counted rather than blocking the AWT thread.
+ *
+ * @author Marcus Whybrow
+ */
+public class InputQueue {
+
+	/** The time of each entry, from System.nanoTime() **/
+	private long[] times;
+	/** The key code of each entry, shifted left once with the lowest bit set for a press **/
+	private int[] codes;
+	/** Selects a position in the arrays from a head or tail count **/
+	private int mask;
+
+	/** The number of entries ever taken, only moved by the taking thread **/
+	private AtomicLong head = new AtomicLong();
+	/** The number of entries ever added, only moved by the adding thread **/
+	private AtomicLong tail = new AtomicLong();
+	/** The number of entries dropped because the queue was full **/
+	private volatile long dropped = 0;
+
+	/**
+	 * Create an empty queue
+	 *
+	 * @param capacity The most entries held at once, rounded up to a power of two
+	 */
+	public InputQueue(int capacity) {
+
+		int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+
+		times = new long[size];
+		codes = new int[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * Add a key change to the end of the queue, only called by the adding thread
+	 *
+	 * @param time When the key changed, from System.nanoTime()
+	 * @param key The code of the key
+	 * @param pressed True if the key was pressed, false if released
+	 * @return False if the queue was full and the change was dropped
+	 */
+	public boolean offer(long time, int key, boolean pressed) {
+
+		long t = tail.get();
+
+		if(t - head.get() == times.length) {
+			dropped++;
+			return false;
+		}
+
+		int i = (int) t & mask;
+		times[i] = time;
+		codes[i] = (key << 1) | (pressed ? 1 : 0);
+
+		//Publish the entry
+
+		tail.lazySet(t + 1);
+		return true;
+	}
+
+	/**
+	 * Check whether the entry at the head of the queue happened before a
+	 * time, only called by the taking thread
+	 *
+	 * @param before The time to check against
+	 * @return True if there is an entry and it happened before the time
+	 */
+	public boolean hasNext(long before) {
+
+		long h = head.get();
+		return h != tail.get() && times[(int) h & mask] - before < 0;
+	}
+
+	/**
+	 * Get when the entry at the head of the queue happened, only valid after
+	 * hasNext() has returned true
+	 *
+	 * @return The time of the key change
+	 */
+	public long nextTime() {
+
+		return times[(int) head.get() & mask];
+	}
+
+	/**
+	 * Get the key of the entry at the head of the queue, only valid after
+	 * hasNext() has returned true
+	 *
+	 * @return The code of the key
+	 */
+	public int nextKey() {
+
+		return codes[(int) head.get() & mask] >>> 1;
+	}
+
+	/**
+	 * Get whether the entry at the head of the queue is a press, only valid
+	 * after hasNext() has returned true
+	 *
+	 * @return True for a press, false for a release
+	 */
+	public boolean nextPressed() {
+
+		return (codes[(int) head.get() & mask] & 1) != 0;
+	}
+
+	/**
+	 * Take the entry at the head of the queue, handing its space back
+	 *
+	 */
+	public void advance() {
+
+		head.lazySet(head.get() + 1);
+	}
+
+	/**
+	 * Get the number of key changes dropped because the queue was full
+	 *
+	 * @return The number dropped
+	 */
+	public long getDropped() {
+
+		return dropped;
+	}
+}
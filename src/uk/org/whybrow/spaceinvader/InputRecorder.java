@@ -0,0 +1,146 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Records every change to the keys the game uses, against the game logic
+ * step it happened on, so that a game can be played back exactly with an
+ * InputReplay.
+ *
+ * The recording is a small binary stream. It begins with a header holding a
+ * magic number, a format version, the seed of the game and the time step,
+ * followed by one entry per key change. Each entry is three variable length
+ * numbers, the number of steps since the previous entry, the key code, and
+ * the state of the key from the game's Keyboard, which holds how long the
+ * key was held within the step. Most entries take three or four bytes.
+ *
+ * Version 1 recordings, made before keys were held for part of a step, have
+ * two numbers per entry, the steps since the previous entry and the key code
+ * shifted left once with the lowest bit set if the key was pressed for the
+ * whole step. InputReplay can still play them back.
+ *
+ * The recording can be closed from another thread, such as a shutdown hook,
+ * while the game loop is still recording, so recording and closing are
+ * synchronised with each other.
+ *
+ * @author Marcus Whybrow
+ */
+public class InputRecorder {
+
+	/** Marks the start of a recording, "SIKR" **/
+	protected static final int MAGIC = 0x53494b52;
+	/** The version of the recording format **/
+	protected static final int VERSION = 2;
+	/** The version of recordings with keys pressed for whole steps only **/
+	protected static final int VERSION_WHOLE_STEPS = 1;
+
+	/** The stream the recording is written to **/
+	private DataOutputStream out;
+	/** The state of each game key at the last step recorded **/
+	private int[] lastState = new int[Keyboard.GAME_KEYS.length];
+	/** The step of the last key change written **/
+	private long lastTick = 0;
+
+	/**
+	 * Create a recorder and write the header of the recording
+	 *
+	 * @param out The stream to write the recording to
+	 * @param seed The seed of the game being recorded
+	 * @param step The time step of the game being recorded, in milliseconds
+	 * @throws IOException If the header could not be written
+	 */
+	public InputRecorder(OutputStream out, long seed, long step) throws IOException {
+
+		this.out = new DataOutputStream(out);
+
+		this.out.writeInt(MAGIC);
+		this.out.writeByte(VERSION);
+		this.out.writeLong(seed);
+		this.out.writeInt((int) step);
+		this.out.flush();
+	}
+
+	/**
+	 * Compare the keyboard to the last step and write any keys that changed,
+	 * called at the start of every game logic step once the keyboard has been
+	 * polled
+	 *
+	 * @param tick The number of the step about to run
+	 * @param keyboard The keyboard of the game being recorded
+	 */
+	public synchronized void record(long tick, Keyboard keyboard) {
+
+		if(out == null) {
+			return;
+		}
+
+		boolean changed = false;
+
+		try {
+			for(int i = 0; i < Keyboard.GAME_KEYS.length; i++) {
+
+				int key = Keyboard.GAME_KEYS[i];
+				int state = keyboard.getState(key);
+
+				if(state != lastState[i]) {
+					writeVarLong(tick - lastTick);
+					writeVarLong(key);
+					writeVarLong(state);
+
+					lastState[i] = state;
+					lastTick = tick;
+					changed = true;
+				}
+			}
+
+			//Key changes are rare, so flush them straight away to keep the
+			//recording complete if the game is killed
+
+			if(changed) {
+				out.flush();
+			}
+		} catch(IOException e) {
+			System.err.println("Could not write input recording, recording stopped");
+			out = null;
+		}
+	}
+
+	/**
+	 * Finish the recording and close the stream
+	 *
+	 */
+	public synchronized void close() {
+
+		if(out == null) {
+			return;
+		}
+
+		try {
+			out.close();
+		} catch(IOException e) {
+			System.err.println("Could not close input recording");
+		}
+
+		out = null;
+	}
+
+	/**
+	 * Write a positive number using seven bits per byte, the top bit of each
+	 * byte is set if more bytes follow
+	 *
+	 * @param value The number to write
+	 * @throws IOException If the number could not be written
+	 */
+	private void writeVarLong(long value) throws IOException {
+
+		while((value & ~0x7fL) != 0) {
+			out.writeByte((int) (value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+
+		out.writeByte((int) value);
+	}
+}
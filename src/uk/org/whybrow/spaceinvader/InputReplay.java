@@ -0,0 +1,175 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Plays back a recording made by an InputRecorder, pressing and releasing
+ * keys on the same game logic steps they were pressed and released on when
+ * the recording was made. A game created with the seed of the recording and
+ * run at the same time step will then play out exactly as it did before,
+ * with or without a display.
+ *
+ * Keys in version 1 recordings are played back as held for the whole of
+ * each step they were pressed on.
+ *
+ * @author Marcus Whybrow
+ */
+public class InputReplay {
+
+	/** The stream the recording is read from **/
+	private DataInputStream in;
+	/** The seed of the recorded game **/
+	private long seed;
+	/** The time step of the recorded game, in milliseconds **/
+	private long step;
+	/** The version of the recording format **/
+	private int version;
+
+	/** The step the next key change happens on **/
+	private long nextTick;
+	/** The key code of the next key change **/
+	private int nextKey;
+	/** The state of the key after the next key change, as in Keyboard.getState() **/
+	private int nextState;
+	/** True once the end of the recording has been reached **/
+	private boolean finished = false;
+
+	/**
+	 * Open a recording, reading its header and the first key change
+	 *
+	 * @param in The stream to read the recording from
+	 * @throws IOException If the stream is not a recording that can be read
+	 */
+	public InputReplay(InputStream in) throws IOException {
+
+		this.in = new DataInputStream(in);
+
+		if(this.in.readInt() != InputRecorder.MAGIC) {
+			throw new IOException("Not an input recording");
+		}
+
+		version = this.in.readByte();
+
+		if(version != InputRecorder.VERSION && version != InputRecorder.VERSION_WHOLE_STEPS) {
+			throw new IOException("Unknown input recording version " + version);
+		}
+
+		seed = this.in.readLong();
+		step = this.in.readInt();
+
+		if(step <= 0 || step > 1000) {
+			throw new IOException("Invalid time step " + step + "ms in input recording");
+		}
+
+		readNext();
+	}
+
+	/**
+	 * Apply all key changes for a step to the keyboard, called at the start
+	 * of every game logic step instead of polling the keyboard
+	 *
+	 * @param tick The number of the step about to run
+	 * @param keyboard The keyboard of the game being played back
+	 */
+	public void apply(long tick, Keyboard keyboard) {
+
+		while(!finished && nextTick <= tick) {
+			keyboard.setState(nextKey, nextState);
+			readNext();
+		}
+	}
+
+	/**
+	 * Read the next key change from the recording
+	 *
+	 */
+	private void readNext() {
+
+		try {
+			nextTick += readVarLong();
+
+			if(version == InputRecorder.VERSION_WHOLE_STEPS) {
+				long entry = readVarLong();
+				nextKey = (int) (entry >>> 1);
+				nextState = ((entry & 1) != 0) ? (int) step + 1 : 0;
+			} else {
+				nextKey = (int) readVarLong();
+				nextState = (int) readVarLong();
+			}
+		} catch(EOFException e) {
+			close();
+		} catch(IOException e) {
+			System.err.println("Could not read input recording, replay stopped");
+			close();
+		}
+	}
+
+	/**
+	 * Read a number written by InputRecorder.writeVarLong
+	 *
+	 * @return The number read
+	 * @throws IOException If the number could not be read
+	 */
+	private long readVarLong() throws IOException {
+
+		long value = 0;
+		int shift = 0;
+		int b;
+
+		do {
+			b = in.readUnsignedByte();
+			value |= (long) (b & 0x7f) << shift;
+			shift += 7;
+		} while((b & 0x80) != 0);
+
+		return value;
+	}
+
+	/**
+	 * Stop the replay and close the stream
+	 *
+	 */
+	public void close() {
+
+		finished = true;
+
+		try {
+			in.close();
+		} catch(IOException e) {
+		}
+	}
+
+	/**
+	 * Check whether every key change in the recording has been applied
+	 *
+	 * @return True if the replay has finished
+	 */
+	public boolean isFinished() {
+
+		return finished;
+	}
+
+	/**
+	 * Get the seed of the recorded game
+	 *
+	 * @return The seed to create the game with
+	 */
+	public long getSeed() {
+
+		return seed;
+	}
+
+	/**
+	 * Get the time step of the recorded game
+	 *
+	 * @return The time step in milliseconds
+	 */
+	public long getStep() {
+
+		return step;
+	}
+}
@@ -1,19 +1,24 @@
 
 package uk.org.whybrow.spaceinvader;
 
-import java.awt.Rectangle;
 import java.awt.Point;
+import java.awt.Image;
 
 /**
  * Extends the entity class as the invader is a drawable object of the game,
  * The player controls this entity using the keyboard
  *
+ * In swarm mode the game also has drone invaders, which steer themselves
+ * left and right at random. Drones do not score, do not pick up power ups
+ * and go back to the top of the stage when they land, only the player's
+ * invader can complete a level.
+ *
  * @author Marcus Whybrow
  */
 public class InvaderEntity extends Entity {
 
 	/** Current velocity of the invader **/
-	private int currentVelocity = 0;
+	private double currentVelocity = 0;
 	/** acceleration per second **/
 	private int acceleration = 1000;
 	/** constant resistance per second (even when not accelerating) **/
@@ -47,6 +52,22 @@ public class InvaderEntity extends Entity {
 	/** True if the shield is on, thus no damage can be recieved **/
 	private boolean shieldIsOn = false;
 
+	/** The generator a drone steers with, null for the player's invader **/
+	private GameRandom random;
+	/** The direction a drone is steering, -1 left, 0 neither or 1 right **/
+	private int steer = 0;
+	/** The time a drone chooses a new direction to steer **/
+	private long steerUntil = 0;
+	/** True if a drone was put back at the top this step, and has not been committed yet **/
+	private boolean respawned = false;
+
+	/** The sprite used when not accelerating **/
+	private static final Image NORMAL_SPRITE = SpriteCache.get("sprites/Alien_normal.png");
+	/** The sprite used when accelerating left **/
+	private static final Image LEFT_SPRITE = SpriteCache.get("sprites/Alien_left.png");
+	/** The sprite used when accelerating right **/
+	private static final Image RIGHT_SPRITE = SpriteCache.get("sprites/Alien_right.png");
+
 	/**
 	 * Create an invader entity
 	 *
@@ -57,7 +78,43 @@ public class InvaderEntity extends Entity {
 	public InvaderEntity(int x, int y, Game game) {
 
 		super(x, y, "sprites/Alien_normal.png", game);
-		pos.x -= sprite.getWidth(null)/2;
+		setX(getX() - getSprite().getWidth(null)/2);
+	}
+
+	/**
+	 * Create a drone invader, which steers itself
+	 *
+	 * @param x The horizontal position to place the invader at
+	 * @param y The vertical position to place the invader at
+	 * @param game The game that the invader is in
+	 * @param random The generator the drone's steering is taken from
+	 */
+	public InvaderEntity(int x, int y, Game game, GameRandom random) {
+
+		this(x, y, game);
+		this.random = random;
+	}
+
+	/**
+	 * Check whether this invader steers itself rather than being controlled
+	 * by the player
+	 *
+	 * @return True for a drone
+	 */
+	public boolean isDrone() {
+
+		return random != null;
+	}
+
+	/**
+	 * Drones only steer themselves, so can be moved at the same time as other
+	 * independent entities
+	 *
+	 * @return True for a drone
+	 */
+	public boolean isIndependent() {
+
+		return random != null;
 	}
 
 	public void setStatus(int status) {
@@ -79,12 +136,12 @@ public class InvaderEntity extends Entity {
 			this.powerUp = powerUp;
 
 			if(powerUp == SPEED_BOOST) {
-				EnergyEntity.get().setType(EnergyEntity.CONTINUOUS);
+				game.energy.setType(EnergyEntity.CONTINUOUS);
 			} else if(powerUp == PULSE_SHIELD) {
-				EnergyEntity.get().setType(EnergyEntity.SEGMENTED);
+				game.energy.setType(EnergyEntity.SEGMENTED);
 			}
 
-			EnergyEntity.get().setIsVisible(true);
+			game.energy.setIsVisible(true);
 		}
 	}
 
@@ -97,28 +154,44 @@ public class InvaderEntity extends Entity {
 
 		//Record last position befor changes
 
-		lastX = pos.x;
+		lastX = getX();
 
 		//Movement logic - only if the level is in progress
 
 		if(game.status == game.LEVEL_IN_PROGRESS) {
 
-			//Left and right actions
+			//Drones choose their own direction now and again
 
-			if(Keyboard.isPressed(Keyboard.LEFT)) {
-				accel(false, delta);
-				changeSprite("sprites/Alien_left.png");
-			} else if(Keyboard.isPressed(Keyboard.RIGHT)) {
-				accel(true, delta);
-				changeSprite("sprites/Alien_right.png");
+			if(random != null) {
+				steer(delta);
 			} else {
-				//TODO make sprite changing more efficient
-				changeSprite("sprites/Alien_normal.png");
+
+				//Left and right actions, only for as long as each key was held
+				//this step, left wins if both were held at once
+
+				long left = game.keyboard.getHeldTime(Keyboard.LEFT);
+				long right = Math.min(game.keyboard.getHeldTime(Keyboard.RIGHT), delta - left);
+
+				if(left > 0) {
+					accel(false, left);
+				}
+
+				if(right > 0) {
+					accel(true, right);
+				}
+
+				if(game.keyboard.isPressed(Keyboard.LEFT)) {
+					changeSprite(LEFT_SPRITE);
+				} else if(game.keyboard.isPressed(Keyboard.RIGHT)) {
+					changeSprite(RIGHT_SPRITE);
+				} else {
+					changeSprite(NORMAL_SPRITE);
+				}
 			}
 
 			//Space key pressed action
 
-			if(Keyboard.isPressed(Keyboard.SPACE)) {
+			if(random == null && game.keyboard.isPressed(Keyboard.SPACE)) {
 				
 				switch (powerUp) {
 						
@@ -127,15 +200,15 @@ public class InvaderEntity extends Entity {
 						acceleration = 1400;
 						shieldIsOn = false;
 
-						EnergyEntity.get().decreaseEnergy((double) (100 * delta) / 5000);
-						if(EnergyEntity.get().getEnergy() <= 0) {
+						game.energy.decreaseEnergy((double) (100 * delta) / 5000);
+						if(game.energy.getEnergy() <= 0) {
 							setPowerup(NO_POWERUP);
-							EnergyEntity.get().setIsVisible(false);
+							game.energy.setIsVisible(false);
 						}
 						break;
 						
 					case PULSE_SHIELD:
-						shieldIsOn = true;
+						shieldIsOn = game.energy.getEnergy() > 0;
 						break;
 					
 					case NO_POWERUP:
@@ -154,12 +227,12 @@ public class InvaderEntity extends Entity {
 		//Apply resistance
 
 		if(currentVelocity > 0) {
-			currentVelocity -= (resistance * delta) / 1000;
+			currentVelocity -= resistance * delta / 1000.0;
 			if(currentVelocity < 0) {
 				currentVelocity = 0;
 			}
 		} else if(currentVelocity < 0) {
-			currentVelocity += (resistance * delta) / 1000;
+			currentVelocity += resistance * delta / 1000.0;
 			if(currentVelocity > 0) {
 				currentVelocity = 0;
 			}
@@ -167,16 +240,16 @@ public class InvaderEntity extends Entity {
 		
 		//Change the x position based on previous calculations
 		
-		pos.x += (currentVelocity * delta) / 1000;
+		moveAt((int) currentVelocity, 0, delta);
 
 		//Move the invader off the stage if the level was completed
 
-		if(game.status == game.LEVEL_COMPLETE) {
-			pos.y += (500 * delta) / 1000;
+		if(game.status == game.LEVEL_COMPLETE && random == null) {
+			moveAt(0, 500, delta);
 
 			//Once off the stage start the next level
 
-			if(pos.y > game.image.getHeight(null)) {
+			if(getY() > game.image.getHeight(null)) {
 				game.startNewLevel();
 			}
 		} else {
@@ -189,14 +262,13 @@ public class InvaderEntity extends Entity {
 	}
 
 	/**
-	 * Get the hitbox for the invader - the hitable area for projectiles to
-	 * interact with
+	 * Set the hitbox for the invader - the hitable area for projectiles to
+	 * interact with, the lower half of the sprite
 	 *
-	 * @return The hitbox in rectangle form
+	 * @param sprite The image now displayed
 	 */
-	public Rectangle getHitbox() {
-		hitbox.setBounds(pos.x, pos.y + sprite.getHeight(null)/2, sprite.getWidth(null), sprite.getHeight(null)/2);
-		return hitbox;
+	protected void fitHitbox(Image sprite) {
+		setHitbox(0, sprite.getHeight(null)/2, sprite.getWidth(null), sprite.getHeight(null)/2);
 	}
 
 	/**
@@ -206,8 +278,12 @@ public class InvaderEntity extends Entity {
 
 		//If touching the ground the invader has landed
 
-		if(pos.y + sprite.getHeight(null) > game.image.getHeight(null) - 75) {
-			game.notifyLevelComplete();
+		if(getY() + getSprite().getHeight(null) > game.image.getHeight(null) - 75) {
+			if(random != null) {
+				respawn();
+			} else {
+				game.notifyLevelComplete();
+			}
 		}
 	}
 
@@ -219,13 +295,13 @@ public class InvaderEntity extends Entity {
 		//When a side is hit reverse the velocity and check to see if dropping
 		//down is valid
 
-		if(pos.x <= 0) {
-			pos.x = lastX;
+		if(getX() <= 0) {
+			setX(lastX);
 			currentVelocity = Math.abs(currentVelocity);
 
 			checkDrop(JUST_HIT_LEFT);
-		} else if(pos.x >= 384 - this.sprite.getWidth(null)) {
-			pos.x = lastX;
+		} else if(getX() >= 384 - getSprite().getWidth(null)) {
+			setX(lastX);
 			currentVelocity = Math.abs(currentVelocity) * -1;
 
 			checkDrop(JUST_HIT_RIGHT);
@@ -248,14 +324,68 @@ public class InvaderEntity extends Entity {
 			//Drop the invader down, pop the score, add the score, update last
 			//legimate move
 
-			pos.y += dropDist;
+			setY(getY() + dropDist);
 
-			game.scorePop("+50", pos.x + (int) sprite.getWidth(null)/2, pos.y + sprite.getHeight(null)/2);
-			game.modScore(50);
+			if(random == null) {
+				game.scorePop("+50", getX() + (int) getSprite().getWidth(null)/2, getY() + getSprite().getHeight(null)/2);
+				game.modScore(50);
+			}
 			lastMove = status;
 		}
 	}
 	
+	/**
+	 * Steer a drone, keeping to a direction for a random time before choosing
+	 * another
+	 *
+	 * @param delta The time since the last game loop
+	 */
+	private void steer(long delta) {
+
+		if(game.getTime() >= steerUntil) {
+			steer = random.nextInt(3) - 1;
+			steerUntil = game.getTime() + 300 + random.nextInt(1200);
+		}
+
+		if(steer < 0) {
+			accel(false, delta);
+			changeSprite(LEFT_SPRITE);
+		} else if(steer > 0) {
+			accel(true, delta);
+			changeSprite(RIGHT_SPRITE);
+		} else {
+			changeSprite(NORMAL_SPRITE);
+		}
+	}
+
+	/**
+	 * Put a drone that has landed back at the top of the stage, somewhere
+	 * random. Its previous position is left alone until commit(), as other
+	 * entities may be reading it while this one moves.
+	 *
+	 */
+	private void respawn() {
+
+		setX(random.nextInt(game.image.getWidth(null) - getSprite().getWidth(null)));
+		setY(0);
+		respawned = true;
+		currentVelocity = 0;
+		lastMove = NOT_HIT_ANY_SIDE;
+	}
+
+	/**
+	 * Finish putting a drone back at the top, so it is not drawn sliding up
+	 * from the ground
+	 *
+	 */
+	public void commit() {
+
+		if(respawned) {
+			savePosition();
+			respawned = false;
+		}
+	}
+
 	/**
 	 * Adjust invader speed based on current velocity
 	 *
@@ -267,9 +397,9 @@ public class InvaderEntity extends Entity {
 		//Accelerate
 
 		if(right) {
-			currentVelocity += (acceleration * delta) / 1000;
+			currentVelocity += acceleration * delta / 1000.0;
 		} else {
-			currentVelocity -= (acceleration * delta) / 1000;
+			currentVelocity -= acceleration * delta / 1000.0;
 		}
 
 		//Cap the speed at the max speed
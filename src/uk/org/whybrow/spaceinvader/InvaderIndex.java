@@ -0,0 +1,130 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import java.awt.Rectangle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Finds the invader nearest to a point, for tanks choosing which invader to
+ * aim at when there are many of them.
+ *
+ * The centre of every invader's hitbox is taken once per game logic step
+ * and the invaders are sorted by horizontal position. A search starts from
+ * the invaders either side of the point and works outwards, stopping on each
+ * side once the horizontal distance alone is further than the nearest
+ * invader found so far. The sort packs each position and list index into a
+ * single long, so no objects are created and sorting is a primitive sort.
+ *
+ * @author Marcus Whybrow
+ */
+public class InvaderIndex {
+
+	/** The invaders as last updated **/
+	private ArrayList <InvaderEntity>invaders;
+	/** The horizontal centre of each invader, by list index **/
+	private int[] centreX = new int[16];
+	/** The vertical centre of each invader, by list index **/
+	private int[] centreY = new int[16];
+	/** Each invaders horizontal centre in the top half and list index in the bottom, sorted **/
+	private long[] sorted = new long[16];
+	/** The number of invaders **/
+	private int count = 0;
+
+	/**
+	 * Take the position of every invader and sort them
+	 *
+	 * @param invaders The invaders to search
+	 */
+	public void update(ArrayList <InvaderEntity>invaders) {
+
+		this.invaders = invaders;
+		count = invaders.size();
+
+		if(centreX.length < count) {
+			int size = Math.max(count, centreX.length * 2);
+			centreX = new int[size];
+			centreY = new int[size];
+			sorted = new long[size];
+		}
+
+		for(int i = 0; i < count; i++) {
+			Rectangle box = invaders.get(i).getHitbox();
+
+			centreX[i] = box.x + box.width / 2;
+			centreY[i] = box.y + box.height / 2;
+			sorted[i] = ((long) centreX[i] << 32) | i;
+		}
+
+		Arrays.sort(sorted, 0, count);
+	}
+
+	/**
+	 * Find the invader nearest to a point, as of the last update
+	 *
+	 * @param x The horizontal position of the point
+	 * @param y The vertical position of the point
+	 * @return The nearest invader, or null if there are none
+	 */
+	public InvaderEntity nearest(int x, int y) {
+
+		if(count == 0) {
+			return null;
+		}
+
+		//Find the first invader at or to the right of the point
+
+		long key = (long) x << 32;
+		int right = Arrays.binarySearch(sorted, 0, count, key);
+
+		if(right < 0) {
+			right = -right - 1;
+		}
+
+		int left = right - 1;
+		int best = -1;
+		long bestDistance = Long.MAX_VALUE;
+
+		//Work outwards until both sides are too far away horizontally
+
+		while(left >= 0 || right < count) {
+
+			if(right < count) {
+				int i = (int) sorted[right];
+				long dx = centreX[i] - x;
+
+				if(dx * dx >= bestDistance) {
+					right = count;
+				} else {
+					long dy = centreY[i] - y;
+
+					if(dx * dx + dy * dy < bestDistance) {
+						bestDistance = dx * dx + dy * dy;
+						best = i;
+					}
+					right++;
+				}
+			}
+
+			if(left >= 0) {
+				int i = (int) sorted[left];
+				long dx = x - centreX[i];
+
+				if(dx * dx >= bestDistance) {
+					left = -1;
+				} else {
+					long dy = centreY[i] - y;
+
+					if(dx * dx + dy * dy < bestDistance) {
+						bestDistance = dx * dx + dy * dy;
+						best = i;
+					}
+					left--;
+				}
+			}
+		}
+
+		return invaders.get(best);
+	}
+}
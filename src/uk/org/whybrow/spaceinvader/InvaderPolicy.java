@@ -0,0 +1,191 @@
+
+package uk.org.whybrow.spaceinvader;
+
+/**
+ * Plays the invader without a player, by pressing the game's keys before
+ * each game logic step. Used by the batch runner to play many games the
+ * same way, so a change to the difficulty can be judged by what happens to
+ * the same kind of player.
+ *
+ * A policy only reads the stage as it is between steps and only presses
+ * keys, so it plays by the same rules as a person would. Each game needs a
+ * policy of its own, as a policy remembers what it was doing, and any
+ * random choices are taken from the seed it is given so a game with the
+ * same seed and policy plays out the same every time.
+ *
+ * @author Marcus Whybrow
+ */
+public abstract class InvaderPolicy {
+
+	/** The name of every policy that can be created by name **/
+	public static final String[] NAMES = {"sweep", "dodge", "wander"};
+
+	/** How close to a side the invader has to be to count as against it **/
+	private static final int SIDE_MARGIN = 2;
+
+	/** The direction the invader is being steered, -1 left, 1 right **/
+	protected int direction = 1;
+
+	/**
+	 * Create a policy by name
+	 *
+	 * @param name One of NAMES
+	 * @param seed The seed for any random choices the policy makes
+	 * @return The new policy
+	 * @throws IllegalArgumentException If there is no policy with the name
+	 */
+	public static InvaderPolicy create(String name, long seed) {
+
+		if(name.equals("sweep")) {
+			return new Sweep();
+		} else if(name.equals("dodge")) {
+			return new Dodge();
+		} else if(name.equals("wander")) {
+			return new Wander(seed);
+		}
+
+		throw new IllegalArgumentException("No invader policy called " + name);
+	}
+
+	/**
+	 * Press the keys for the coming step
+	 *
+	 * @param game The game being played
+	 */
+	public abstract void press(Game game);
+
+	/**
+	 * Turn around once the invader is against the side it is heading to
+	 *
+	 * @param game The game being played
+	 */
+	protected void bounce(Game game) {
+
+		int x = game.invader.getX();
+		int right = game.image.getWidth(null) - game.invader.getSprite().getWidth(null);
+
+		if(x <= SIDE_MARGIN) {
+			direction = 1;
+		} else if(x >= right - SIDE_MARGIN) {
+			direction = -1;
+		}
+	}
+
+	/**
+	 * Hold the key for the direction being steered, and let go of the other
+	 *
+	 * @param keyboard The keyboard to press
+	 */
+	protected void steer(Keyboard keyboard) {
+
+		keyboard.setPressed(Keyboard.LEFT, direction < 0);
+		keyboard.setPressed(Keyboard.RIGHT, direction > 0);
+	}
+
+	/**
+	 * Goes from side to side as quickly as possible, to land sooner, and
+	 * never uses a power up
+	 *
+	 */
+	private static class Sweep extends InvaderPolicy {
+
+		public void press(Game game) {
+
+			bounce(game);
+			steer(game.keyboard);
+		}
+	}
+
+	/**
+	 * Goes from side to side, but turns away from a tank underneath it and
+	 * uses any power up while a tank is close
+	 *
+	 */
+	private static class Dodge extends InvaderPolicy {
+
+		/** How close a tank has to be horizontally to be avoided **/
+		private static final int DANGER = 40;
+
+		public void press(Game game) {
+
+			bounce(game);
+
+			int middle = game.invader.getX() + game.invader.getSprite().getWidth(null) / 2;
+			TankEntity tank = nearestTank(game, middle);
+			int tankMiddle = tank.getX() + tank.getSprite().getWidth(null) / 2;
+			boolean close = Math.abs(tankMiddle - middle) < DANGER;
+
+			//Head away from the tank, unless already against that side
+
+			if(close) {
+				direction = tankMiddle > middle ? -1 : 1;
+				bounce(game);
+			}
+
+			steer(game.keyboard);
+			game.keyboard.setPressed(Keyboard.SPACE, close);
+		}
+
+		/**
+		 * Find the tank nearest horizontally to a point
+		 *
+		 * @param game The game being played
+		 * @param x The horizontal position
+		 * @return The nearest tank
+		 */
+		private TankEntity nearestTank(Game game, int x) {
+
+			TankEntity nearest = game.tank;
+			int nearestDistance = Integer.MAX_VALUE;
+
+			for(int i = 0; i < game.tanks.size(); i++) {
+				TankEntity each = game.tanks.get(i);
+				int distance = Math.abs(each.getX() + each.getSprite().getWidth(null) / 2 - x);
+
+				if(distance < nearestDistance) {
+					nearest = each;
+					nearestDistance = distance;
+				}
+			}
+
+			return nearest;
+		}
+	}
+
+	/**
+	 * Steers a random way for a random time, like a player who is not paying
+	 * much attention, and now and again uses a power up
+	 *
+	 */
+	private static class Wander extends InvaderPolicy {
+
+		/** The source of every choice **/
+		private GameRandom random;
+		/** When to choose again, in game time **/
+		private long chooseAt = 0;
+		/** True to hold the space key until the next choice **/
+		private boolean space;
+
+		/**
+		 * Create the policy
+		 *
+		 * @param seed The seed for every choice
+		 */
+		public Wander(long seed) {
+
+			random = new GameRandom(seed);
+		}
+
+		public void press(Game game) {
+
+			if(game.getTime() >= chooseAt) {
+				direction = random.nextInt(3) - 1;
+				space = random.nextDouble() < 0.1;
+				chooseAt = game.getTime() + 200 + random.nextInt(800);
+			}
+
+			steer(game.keyboard);
+			game.keyboard.setPressed(Keyboard.SPACE, space);
+		}
+	}
+}
@@ -1,10 +1,7 @@
 
 package uk.org.whybrow.spaceinvader;
 
-import java.awt.AWTEvent;
 import java.awt.Component;
-import java.awt.Toolkit;
-import java.awt.event.AWTEventListener;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 
@@ -12,58 +9,196 @@ import java.awt.event.KeyEvent;
 /**
  * A keyboard utility system, inspired by a online tutorial
  *
+ * Key presses and releases are not applied as they arrive. The AWT thread
+ * timestamps each one and adds it to an InputQueue, and the game logic
+ * takes them off the queue at the start of each step with poll(). Every key
+ * change that happened during a step is applied at the time it happened, so
+ * for each game key poll() works out how long it was held within the step,
+ * and whether it was down at all. A tap shorter than a step is still seen,
+ * and a key released half way through a step only counts for half of it.
+ *
+ * As only the game logic thread reads and writes the key state, the state
+ * is always up to date for the game logic, whichever thread it runs on.
+ *
+ * Each game has a keyboard of its own, so games running side by side in
+ * one process never see each other's keys.
+ *
  * @author Marcus Whybrow
  */
 public class Keyboard {
-	/** The status of the keys on the keyboard */
-	private static boolean[] keys = new boolean[1024];
 
 	public static final int LEFT = KeyEvent.VK_LEFT;
 	public static final int RIGHT = KeyEvent.VK_RIGHT;
 	public static final int DOWN = KeyEvent.VK_DOWN;
 
 	public static final int SPACE = KeyEvent.VK_SPACE;
-	
+
+	/** Every key the game reacts to **/
+	public static final int[] GAME_KEYS = {LEFT, RIGHT, DOWN, SPACE};
+
+	/** The number of key codes tracked **/
+	private static final int KEY_CODES = 1024;
+	/** The most key changes waiting to be applied at once **/
+	private static final int QUEUE_CAPACITY = 1024;
+
+	/** Key changes waiting for the game logic to apply them **/
+	private InputQueue queue = new InputQueue(QUEUE_CAPACITY);
+
+	/** Whether each key is down, as of the last key change applied **/
+	private boolean[] down = new boolean[KEY_CODES];
+	/** When each key went down, if it is down, from System.nanoTime() **/
+	private long[] downSince = new long[KEY_CODES];
+	/** The time each game key was held during the last step, in nanoseconds **/
+	private long[] heldNanos = new long[KEY_CODES];
 	/**
-	 * Initialise the central keyboard handler
-	 */
-	public static void init() {
-		Toolkit.getDefaultToolkit().addAWTEventListener( new KeyHandler(), AWTEvent.KEY_EVENT_MASK);
-	}
+	 * The state of each game key during the last step, 0 if it was never
+	 * down, otherwise one more than the milliseconds it was held for
+	 **/
+	private int[] state = new int[KEY_CODES];
 
 	/**
-	 * Initialise the central keyboard handler
+	 * Listen to the key events of a single component
 	 *
 	 * @param c The component to listen to
 	 */
-	public static void init(Component c) {
+	public void init(Component c) {
 		c.addKeyListener( new KeyHandler() );
 	}
 
 	/**
-	 * Checks if the specific key is pressed
+	 * Apply every key change that happened before the end of a game logic
+	 * step, and work out the state of each game key during the step. Should
+	 * only be called by the game logic, at the start of each step.
+	 *
+	 * @param end The time the step ends, from System.nanoTime()
+	 * @param step The length of the step in milliseconds
+	 */
+	public void poll(long end, long step) {
+
+		long start = end - step * 1000000L;
+
+		//Keys already down were held from the start of the step
+
+		for(int i = 0; i < GAME_KEYS.length; i++) {
+			int key = GAME_KEYS[i];
+			heldNanos[key] = 0;
+			state[key] = down[key] ? 1 : 0;
+			downSince[key] = start;
+		}
+
+		//Apply each change at the time it happened, changes from before the
+		//step count as happening at its start
+
+		while(queue.hasNext(end)) {
+
+			long time = Math.max(queue.nextTime() - start, 0) + start;
+			int key = queue.nextKey();
+			boolean pressed = queue.nextPressed();
+
+			queue.advance();
+
+			if(key >= KEY_CODES || pressed == down[key]) {
+				continue;
+			}
+
+			down[key] = pressed;
+
+			if(pressed) {
+				downSince[key] = time;
+				state[key] = 1;
+			} else {
+				heldNanos[key] += time - downSince[key];
+			}
+		}
+
+		//Keys still down are held until the end of the step
+
+		for(int i = 0; i < GAME_KEYS.length; i++) {
+			int key = GAME_KEYS[i];
+
+			if(down[key]) {
+				heldNanos[key] += end - downSince[key];
+			}
+
+			if(state[key] > 0) {
+				state[key] = 1 + (int) Math.min((heldNanos[key] + 500000) / 1000000, step);
+			}
+		}
+	}
+
+	/**
+	 * Checks if the specific key was down at any point during the last step
 	 *
 	 * @param key The code of the key to check
 	 * @return True if key is pressed
 	 */
-	public static boolean isPressed(int key) {
-		return keys[key];
+	public boolean isPressed(int key) {
+		return state[key] > 0;
 	}
 
 	/**
-	 * Set the status of the key
+	 * Get how long a game key was held during the last step
+	 *
+	 * @param key The code of the key to check
+	 * @return The time held in milliseconds, up to the length of the step
+	 */
+	public long getHeldTime(int key) {
+		return Math.max(state[key] - 1, 0);
+	}
+
+	/**
+	 * Get the state of a game key during the last step, as recorded by an
+	 * InputRecorder
+	 *
+	 * @param key The code of the key to check
+	 * @return 0 if the key was never down, otherwise one more than the
+	 *         milliseconds it was held for
+	 */
+	public int getState(int key) {
+		return state[key];
+	}
+
+	/**
+	 * Set the state of a game key for the coming step, as played back by an
+	 * InputReplay. The state stays the same until it is set again or the
+	 * keyboard is next polled.
+	 *
+	 * @param key The code of the key to set
+	 * @param keyState 0 if the key is not down, otherwise one more than the
+	 *                 milliseconds it is held for
+	 */
+	public void setState(int key, int keyState) {
+		state[key] = keyState;
+	}
+
+	/**
+	 * Set the status of the key straight away, rather than waiting for the
+	 * queue. Should only be called from the game logic thread, a key set
+	 * down is held for every step until it is set up again.
 	 *
 	 * @param key The code of the specific key to set
 	 * @param pressed The new status of the key
 	 */
-	public static void setPressed(int key, boolean pressed) {
-		keys[key] = pressed;
+	public void setPressed(int key, boolean pressed) {
+		down[key] = pressed;
+		state[key] = pressed ? 1 : 0;
+	}
+
+	/**
+	 * Get the number of key changes dropped because the game logic fell too
+	 * far behind to take them
+	 *
+	 * @return The number dropped
+	 */
+	public long getDropped() {
+		return queue.getDropped();
 	}
 
 	/**
-	 * A Class that respondes to keypresses (on a global scale)
+	 * A Class that respondes to keypresses on the component the game is
+	 * shown in
 	 */
-	private static class KeyHandler extends KeyAdapter implements AWTEventListener {
+	private class KeyHandler extends KeyAdapter {
 
 		/**
 		 * Notification of a keypress
@@ -74,11 +209,13 @@ public class Keyboard {
 			if(e.isConsumed()) {
 				return;
 			}
-			keys[e.getKeyCode()] = true;
+			queue.offer(System.nanoTime(), e.getKeyCode(), true);
 		}
 
 		/**
-		 * Notification of key release
+		 * Notification of key release. Auto repeat can send a release
+		 * straight before the next press, as both are applied at the time
+		 * they happened the key still counts as held for the whole step.
 		 *
 		 * @param e The even details
 		 */
@@ -86,26 +223,7 @@ public class Keyboard {
 			if(e.isConsumed()) {
 				return;
 			}
-
-			KeyEvent nextPress = (KeyEvent) Toolkit.getDefaultToolkit().getSystemEventQueue().peekEvent(KeyEvent.KEY_PRESSED);
-
-			if((nextPress == null) || (nextPress.getWhen() != e.getWhen())) {
-				keys[e.getKeyCode()] = false;
-			}
-		}
-
-		/**
-		 * Notification that an event in the AWT event system has occoured
-		 *
-		 * @param e
-		 */
-		public void eventDispatched(AWTEvent e) {
-			if(e.getID() == KeyEvent.KEY_PRESSED) {
-				keyPressed((KeyEvent) e);
-			}
-			if(e.getID() == KeyEvent.KEY_RELEASED) {
-				keyReleased((KeyEvent) e);
-			}
+			queue.offer(System.nanoTime(), e.getKeyCode(), false);
 		}
 	}
 }
@@ -0,0 +1,69 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for the game moving between levels, so that the
+ * rest of a recording can be lined up against what the player was doing.
+ * These happen rarely, so every one is recorded, with the stack trace.
+ *
+ * @author Marcus Whybrow
+ */
+@Name("uk.org.whybrow.spaceinvader.Level")
+@Label("Level Transition")
+@Category({"The Last Space Invader"})
+@Description("The game completing a level, starting a level or ending")
+public class LevelEvent extends Event {
+
+	/** The level was completed **/
+	public static final String COMPLETE = "complete";
+	/** A new level was set up **/
+	public static final String START = "start";
+	/** The player ran out of lives **/
+	public static final String DEATH = "death";
+
+	/** What happened **/
+	@Label("Transition")
+	private String transition;
+
+	/** The level being played **/
+	@Label("Level")
+	private long level;
+
+	/** The total score **/
+	@Label("Score")
+	private long score;
+
+	/** The score for the level **/
+	@Label("Level Score")
+	private long levelScore;
+
+	/** The game logic step it happened in **/
+	@Label("Tick")
+	private long tick;
+
+	/**
+	 * Record a level transition straight away
+	 *
+	 * @param transition What happened
+	 * @param game The game it happened in
+	 */
+	public static void record(String transition, Game game) {
+
+		LevelEvent event = new LevelEvent();
+
+		if(event.isEnabled()) {
+			event.transition = transition;
+			event.level = game.currentLevel.getScore();
+			event.score = game.currentScore.getScore();
+			event.levelScore = game.levelScore;
+			event.tick = game.getTicks();
+			event.commit();
+		}
+	}
+}
@@ -0,0 +1,126 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A Flight Recorder event covering one phase of the game loop, such as
+ * checking collisions or drawing the background. Only phases that take
+ * longer than the threshold are recorded, so a recording shows which part
+ * of the loop a long frame was spent in, next to the GC and other JVM
+ * events around it.
+ *
+ * Events are started at the start of a phase and ended at the end of it.
+ * Until Flight Recorder has been started no event is created at all, as the
+ * game loop is too large for the compiler to see that an unused event never
+ * escapes, and every phase would otherwise allocate one. Once it has
+ * started a disabled event costs next to nothing. The threshold can be
+ * changed in a recording settings file, for example
+ *
+ *   java -XX:StartFlightRecording=filename=game.jfr,settings=profile ...
+ *
+ * with uk.org.whybrow.spaceinvader.LoopPhase#threshold set to 0 ms to see
+ * every phase.
+ *
+ * @author Marcus Whybrow
+ */
+@Name("uk.org.whybrow.spaceinvader.LoopPhase")
+@Label("Game Loop Phase")
+@Category({"The Last Space Invader", "Game Loop"})
+@Description("A phase of the game loop that took longer than usual")
+@Threshold("1 ms")
+@StackTrace(false)
+public class LoopPhaseEvent extends Event {
+
+	/** Reading the keys at the start of a step **/
+	public static final String INPUT = "input";
+	/** Moving every shell **/
+	public static final String SHELLS = "shells";
+	/** Checking what the invader collides with **/
+	public static final String COLLISION = "collision";
+	/** Moving every pop up text **/
+	public static final String POPS = "pops";
+	/** Drawing the background and land **/
+	public static final String BACKGROUND_DRAW = "background draw";
+	/** Drawing every entity and shell **/
+	public static final String ENTITY_DRAW = "entity draw";
+	/** Drawing pop ups, scores, the level stats and the overlay **/
+	public static final String TEXT_DRAW = "text draw";
+	/** Showing the finished frame on the screen **/
+	public static final String PRESENT = "present";
+
+	/** True once Flight Recorder has started, before then nothing can be recorded **/
+	private static volatile boolean recorder = false;
+
+	static {
+		FlightRecorder.addListener(new FlightRecorderListener() {
+			public void recorderInitialized(FlightRecorder flightRecorder) {
+				recorder = true;
+			}
+		});
+	}
+
+	/** The phase of the game loop **/
+	@Label("Phase")
+	private String phase;
+
+	/** The game logic step the phase happened in, or after when drawing **/
+	@Label("Tick")
+	private long tick;
+
+	/**
+	 * Start timing a phase
+	 *
+	 * @param phase The phase of the game loop
+	 * @param tick The game logic step it is part of
+	 */
+	public LoopPhaseEvent(String phase, long tick) {
+
+		this.phase = phase;
+		this.tick = tick;
+		begin();
+	}
+
+	/**
+	 * Start timing a phase, if anything could be recording it
+	 *
+	 * @param phase The phase of the game loop
+	 * @param tick The game logic step it is part of
+	 * @return The event, or null if Flight Recorder has not been started
+	 */
+	public static LoopPhaseEvent start(String phase, long tick) {
+
+		return recorder ? new LoopPhaseEvent(phase, tick) : null;
+	}
+
+	/**
+	 * Stop timing a phase, recording it if it took long enough
+	 *
+	 * @param event The event from start, may be null
+	 */
+	public static void end(Event event) {
+
+		if(event != null) {
+			event.commit();
+		}
+	}
+
+	/**
+	 * Check whether Flight Recorder has been started, so events are worth
+	 * creating
+	 *
+	 * @return True once Flight Recorder has started
+	 */
+	static boolean isRecorder() {
+
+		return recorder;
+	}
+}
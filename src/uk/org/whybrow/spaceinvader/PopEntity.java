@@ -1,10 +1,8 @@
 
 package uk.org.whybrow.spaceinvader;
 
-import java.awt.font.TextLayout;
 import java.awt.Font;
 import java.awt.Color;
-import java.awt.Graphics2D;
 
 /**
  * The pop entity literally pops some text up on the screen for a short period
@@ -17,7 +15,7 @@ import java.awt.Graphics2D;
 public class PopEntity extends Entity {
 
 	/** The popup text to display **/
-	private String text;
+	private char[] text;
 	/** The font to use **/
 	private Font font;
 	/** The colour of the text **/
@@ -30,6 +28,13 @@ public class PopEntity extends Entity {
 	/** The position on the stage at which the entity was created **/
 	private int start;
 
+	/** The atlas the text is drawn from **/
+	private GlyphAtlas atlas;
+	/** The width of the text **/
+	private int textWidth;
+	/** The height of the text **/
+	private int textHeight;
+
 
 	/**
 	 * Create a new pop entity
@@ -54,15 +59,21 @@ public class PopEntity extends Entity {
 
 		if(ref != null) {
 
-			pos.x -= (int) sprite.getWidth(null)/2;
-			pos.y -= (int) sprite.getHeight(null)/2;
+			setX(getX() - (int) getSprite().getWidth(null)/2);
+			setY(getY() - (int) getSprite().getHeight(null)/2);
 		} else {
 			this.ref = ref;
 		}
 		
-		this.text = text;
+		this.text = text.toCharArray();
 		this.font = font;
 		this.colour = colour;
+
+		//The text never changes, so lay it out once
+
+		atlas = GlyphAtlas.get(font, colour);
+		textWidth = atlas.getWidth(this.text, this.text.length);
+		textHeight = atlas.getHeight(this.text, this.text.length);
 	}
 
 	/**
@@ -72,41 +83,38 @@ public class PopEntity extends Entity {
 	 */
 	public void move(long delta) {
 
-		pos.y -= (200 * delta) / 1000;
+		moveAt(0, -200, delta);
 
 		//remove the text after the specified travel distance
 
-		if(start - pos.y > popDist) {
+		if(start - getY() > popDist) {
 			game.pops.remove(this);
 		}
 	}
 
 	/**
-	 * Draw the PopEntites text
+	 * Add the PopEntites image and text to a snapshot
 	 *
-	 * @param g2 The graphics context to draw onto
+	 * @param frame The snapshot being taken
 	 */
-	public void draw(Graphics2D g2) {
+	public void snapshot(FrameSnapshot frame) {
 
-		int x = pos.x, y = pos.y;
-
-		//Create the TextLayout to render the text with
-
-		TextLayout t = new TextLayout(text, font, g2.getFontRenderContext());
+		super.snapshot(frame);
 
 		//If there was an image, center the text on that image
 
+		int x = 0, y = 0;
+
 		if(ref != null) {
-			x += (int) sprite.getWidth(null)/2;
-			y += (int) sprite.getHeight(null)/2;
+			x += (int) getSprite().getWidth(null)/2;
+			y += (int) getSprite().getHeight(null)/2;
 		}
 
-		x -= (int) t.getBounds().getWidth()/2;
-		y += (int) t.getBounds().getHeight()/2;
+		x -= textWidth/2;
+		y += textHeight/2;
 
-		//Render the text
+		//Add the text, offset from the previous and current positions
 
-		g2.setColor(colour);
-		t.draw(g2, x, y);
+		frame.text(atlas, text, text.length, store.prevX[row] + x, store.prevY[row] + y, getX() + x, getY() + y);
 	}
 }
@@ -1,7 +1,7 @@
 
 package uk.org.whybrow.spaceinvader;
 
-import java.awt.Rectangle;
+import java.awt.Image;
 
 /**
  * The PowerEntity is a power up for the play to colect invoking special
@@ -16,30 +16,43 @@ import java.awt.Rectangle;
  *
  * @author Marcus Whybrow
  */
-public class PowerEntity extends Entity {
+public class PowerEntity extends Entity implements Collidable {
 
 	/** The speed of the entity as it falls down the screen **/
 	private int speed = 200;
 	/** True if this power up is the speed boost, false if its the shield **/
 	private boolean isSpeed;
+	/** The proxy number of this power up in the games collision grid **/
+	private int proxy;
 
 	/**
 	 * Creates a powerup entity
 	 * 
-	 * @param isSpeed True if speed_boost, false if pulse_shield
 	 * @param game the game this power up is in
+	 * @param random The generator to choose the type and position with
 	 */
-	public PowerEntity(Game game) {
+	public PowerEntity(Game game, GameRandom random) {
 
-		super(0, 0, null);
+		this(game, random.nextDouble() > 0.5, random.nextDouble());
+	}
+
+	/**
+	 * Creates a power up entity of a known type
+	 *
+	 * @param game the game this power up is in
+	 * @param isSpeed True for the speed boost, false for the shield
+	 * @param position Where across the stage to create it, 0 to 1
+	 */
+	public PowerEntity(Game game, boolean isSpeed, double position) {
+
+		super(0, 0, null, game);
 
 		//Get the correct image
 
-		isSpeed = (Math.random() > 0.5) ? true : false;
+		this.isSpeed = isSpeed;
 
 		if(isSpeed) {
 			changeSprite("sprites/speed_boost.png");
-			pos.x -= 7;
 		} else {
 			changeSprite("sprites/pulse_shield.png");
 			
@@ -47,55 +60,86 @@ public class PowerEntity extends Entity {
 
 		//Create at a random viewable horizontal position
 
-		pos.x = (int) ( Math.random() * ( game.image.getWidth(null) - getHitbox().getWidth() ));
-		pos.y = - sprite.getHeight(null);
+		setX((int) ( position * ( game.image.getWidth(null) - getHitbox().getWidth() )));
+		setY(- getSprite().getHeight(null));
+
+		//Fall at a steady speed, the game keeps the collision grid up to date
+		//with where the power up is
 
-		this.game = game;
+		setVelocity(0, speed);
+
+		proxy = game.grid.add(this, 0, getHitbox());
+		setProxy(proxy);
 	}
 
 	/**
-	 * Move down the screen
+	 * Remove the power up once it has fallen off the stage
 	 *
 	 * @param delta The time since the last game loop
 	 */
 	public void move(long delta) {
 
-		//Move
+		if(getHitbox().getMinY() > game.image.getHeight(null)) {
+			remove();
+		}
+	}
 
-		pos.y += (speed * delta) / 1000;
-		
-		//If the power up intersects with invader, activate the correct power up
-		//and remove the power up from gameplay
+	/**
+	 * The collision grid found the power up overlapping an invader, activate
+	 * the correct power up and remove the power up from gameplay. Drones
+	 * take the power up away without using it.
+	 *
+	 * @param index Unused, a power up only has the one box
+	 * @param other The invader
+	 */
+	public void collided(int index, Entity other) {
 
-		if(getHitbox().intersects(game.invader.getHitbox())) {
-			if(isSpeed) {
-				game.invader.setPowerup(game.invader.SPEED_BOOST);
-			} else {
-				game.invader.setPowerup(game.invader.PULSE_SHIELD);
-			}
-			game.entities.remove(this);
+		if(other != game.invader) {
+			remove();
+			return;
 		}
 
-		//Remove the entity if offscreen
-
-		if(getHitbox().getMinY() > game.image.getHeight(null)) {
-			game.entities.remove(this);
+		if(isSpeed) {
+			game.invader.setPowerup(game.invader.SPEED_BOOST);
+		} else {
+			game.invader.setPowerup(game.invader.PULSE_SHIELD);
 		}
- 
+
+		remove();
+	}
+
+	/**
+	 * Get which power up this is
+	 *
+	 * @return True for the speed boost, false for the shield
+	 */
+	public boolean isSpeed() {
+
+		return isSpeed;
+	}
+
+	/**
+	 * Remove all references to this power up from the game
+	 *
+	 */
+	private void remove() {
+
+		game.entities.remove(this);
+		game.grid.remove(proxy);
+		setProxy(-1);
 	}
 
 	/**
-	 * Get the hotable area depending on the power up type
+	 * Set the hitable area depending on the power up type
 	 *
-	 * @return The hitbox in rectanlge form
+	 * @param sprite The image now displayed
 	 */
-	public Rectangle getHitbox() {
+	protected void fitHitbox(Image sprite) {
 
 		if(isSpeed) {
-			hitbox.setBounds(pos.x + 7, pos.y, sprite.getWidth(null) - 23, sprite.getHeight(null));
+			setHitbox(7, 0, sprite.getWidth(null) - 23, sprite.getHeight(null));
 		} else {
-			hitbox.setBounds(pos.x, pos.y + 4, sprite.getWidth(null) - 1, sprite.getHeight(null) - 4);
+			setHitbox(0, 4, sprite.getWidth(null) - 1, sprite.getHeight(null) - 4);
 		}
-		return hitbox;
 	}
 }
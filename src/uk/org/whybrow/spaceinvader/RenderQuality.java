@@ -0,0 +1,191 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+
+/**
+ * Chooses how carefully each frame is drawn, so that slow machines keep a
+ * steady frame rate without anyone having to pick a setting.
+ *
+ * The render thread reports how long each frame took to draw and show, the
+ * game logic runs on its own thread and is not counted. The controller
+ * keeps a running average of that time, and if it goes over most
+ * of the frame budget the quality is stepped down a level. If the average
+ * then stays well under the budget for a couple of seconds the quality is
+ * stepped back up. After any change the controller waits for the average to
+ * settle before changing again, so it does not flick between levels.
+ *
+ * At HIGH everything is drawn with antialiasing and the quality rendering
+ * hints. MEDIUM turns off antialiasing and uses the default hints. LOW asks
+ * for speed over quality, draws text from atlases drawn without
+ * antialiasing, and draws shells where they are rather than between their
+ * last two positions.
+ *
+ * @author Marcus Whybrow
+ */
+public class RenderQuality {
+
+	/** The fastest level of quality **/
+	public static final int LOW = 0;
+	/** The middle level of quality **/
+	public static final int MEDIUM = 1;
+	/** The best level of quality **/
+	public static final int HIGH = 2;
+
+	/** The default time each frame has to be drawn, 60 frames a second **/
+	protected static final long DEFAULT_BUDGET = 1000000000L / 60;
+	/** Step down when the average frame takes more than this part of the budget **/
+	private static final double OVER_BUDGET = 0.9;
+	/** Count as headroom when the average frame takes less than this part of the budget **/
+	private static final double HEADROOM = 0.5;
+	/** The number of frames of headroom needed before stepping up **/
+	private static final int HEADROOM_FRAMES = 120;
+	/** The number of frames to wait after changing level **/
+	private static final int SETTLE_FRAMES = 30;
+	/** How much of each new frame time goes into the average **/
+	private static final double SMOOTHING = 1.0 / 16;
+
+	/** The current level of quality **/
+	private volatile int level = HIGH;
+	/** The time each frame has to be updated and drawn, in nanoseconds **/
+	private long budget = DEFAULT_BUDGET;
+	/** The running average frame time, in nanoseconds **/
+	private double average = 0;
+	/** The number of frames in a row that have been well under budget **/
+	private int headroomFrames = 0;
+	/** The number of frames left to wait before changing level again **/
+	private int settleFrames = SETTLE_FRAMES;
+	/** The number of times the level has changed **/
+	private volatile long changes = 0;
+
+	/**
+	 * Take the time of a frame into account, changing level if needed
+	 *
+	 * @param frameTime The time spent drawing and showing the frame, in nanoseconds
+	 */
+	public void frame(long frameTime) {
+
+		average += (frameTime - average) * SMOOTHING;
+
+		if(settleFrames > 0) {
+			settleFrames--;
+			return;
+		}
+
+		if(average > budget * OVER_BUDGET) {
+
+			//Too slow, step down straight away
+
+			headroomFrames = 0;
+
+			if(level > LOW) {
+				change(level - 1);
+			}
+
+		} else if(average < budget * HEADROOM) {
+
+			//Plenty of time spare, step up once it has lasted
+
+			if(++headroomFrames >= HEADROOM_FRAMES && level < HIGH) {
+				change(level + 1);
+			}
+
+		} else {
+			headroomFrames = 0;
+		}
+	}
+
+	/**
+	 * Set the rendering hints for a frame at the current level
+	 *
+	 * @param g2 The graphics context the frame is drawn with
+	 */
+	public void apply(Graphics2D g2) {
+
+		int current = level;
+
+		if(current == HIGH) {
+			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		} else if(current == MEDIUM) {
+			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+			g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_DEFAULT);
+			g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		} else {
+			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+			g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+			g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+		}
+
+		g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+				(current == LOW) ? RenderingHints.VALUE_TEXT_ANTIALIAS_OFF : RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+	}
+
+	/**
+	 * Check whether shells should be drawn between their last two positions
+	 *
+	 * @return True to interpolate shell positions
+	 */
+	public boolean interpolatesShells() {
+
+		return level > LOW;
+	}
+
+	/**
+	 * Get the current level of quality
+	 *
+	 * @return LOW, MEDIUM or HIGH
+	 */
+	public int getLevel() {
+
+		return level;
+	}
+
+	/**
+	 * Get the name of the current level of quality
+	 *
+	 * @return The name of the level
+	 */
+	public String getLevelName() {
+
+		int current = level;
+		return (current == HIGH) ? "HIGH" : (current == MEDIUM) ? "MEDIUM" : "LOW";
+	}
+
+	/**
+	 * Get the number of times the level has changed
+	 *
+	 * @return The number of changes
+	 */
+	public long getChanges() {
+
+		return changes;
+	}
+
+	/**
+	 * Set the time each frame has to be updated and drawn
+	 *
+	 * @param budget The budget in nanoseconds
+	 */
+	public void setBudget(long budget) {
+
+		if(budget > 0) {
+			this.budget = budget;
+		}
+	}
+
+	/**
+	 * Move to a new level and wait for the average to settle
+	 *
+	 * @param newLevel The level to move to
+	 */
+	private void change(int newLevel) {
+
+		level = newLevel;
+		headroomFrames = 0;
+		settleFrames = SETTLE_FRAMES;
+		changes++;
+	}
+}
@@ -0,0 +1,102 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * A sprite drawn ahead of time at a fixed number of angles, so that drawing
+ * it rotated is a plain image copy rather than a transformed draw.
+ *
+ * A full turn is split into equal buckets and the sprite is drawn once for
+ * each, rotated around its top left corner like an AffineTransform rotation
+ * would. Any angle is drawn using the nearest bucket, which is close enough
+ * for small sprites when the buckets are a few degrees apart.
+ *
+ * @author Marcus Whybrow
+ */
+public class RotatedSprite {
+
+	/** The number of angles the sprite is drawn at **/
+	private int buckets;
+	/** The sprite drawn at each angle **/
+	private BufferedImage[] images;
+	/** Where to draw each image horizontally, relative to the sprites corner **/
+	private int[] offsetX;
+	/** Where to draw each image vertically, relative to the sprites corner **/
+	private int[] offsetY;
+
+	/**
+	 * Draw a sprite at every angle
+	 *
+	 * @param sprite The sprite to rotate
+	 * @param buckets The number of angles to draw it at
+	 */
+	public RotatedSprite(Image sprite, int buckets) {
+
+		this.buckets = buckets;
+		images = new BufferedImage[buckets];
+		offsetX = new int[buckets];
+		offsetY = new int[buckets];
+
+		double w = sprite.getWidth(null), h = sprite.getHeight(null);
+
+		for(int b = 0; b < buckets; b++) {
+
+			double angle = b * 2 * Math.PI / buckets;
+			double c = Math.cos(angle), s = Math.sin(angle);
+
+			//The corners of the sprite after rotating around the top left corner
+
+			double x1 = - h * s, y1 = h * c;
+			double x2 = w * c, y2 = w * s;
+			double x3 = x1 + x2, y3 = y1 + y2;
+
+			int left = (int) Math.floor(Math.min(Math.min(0, x1), Math.min(x2, x3)));
+			int top = (int) Math.floor(Math.min(Math.min(0, y1), Math.min(y2, y3)));
+			int right = (int) Math.ceil(Math.max(Math.max(0, x1), Math.max(x2, x3)));
+			int bottom = (int) Math.ceil(Math.max(Math.max(0, y1), Math.max(y2, y3)));
+
+			//Draw the rotated sprite so its corner lands on the offset
+
+			images[b] = new BufferedImage(right - left, bottom - top, BufferedImage.TYPE_INT_ARGB);
+			offsetX[b] = left;
+			offsetY[b] = top;
+
+			Graphics2D g2 = images[b].createGraphics();
+			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g2.translate(-left, -top);
+			g2.rotate(angle);
+			g2.drawImage(sprite, 0, 0, null);
+			g2.dispose();
+		}
+	}
+
+	/**
+	 * Get the bucket closest to an angle
+	 *
+	 * @param angle The angle in radians, clockwise
+	 * @return The bucket to draw with
+	 */
+	public int bucket(double angle) {
+
+		int b = (int) Math.round(angle * buckets / (2 * Math.PI)) % buckets;
+		return (b < 0) ? b + buckets : b;
+	}
+
+	/**
+	 * Draw the sprite rotated
+	 *
+	 * @param g2 The graphics context to draw to
+	 * @param bucket The bucket of the angle to draw at
+	 * @param x The horizontal position of the sprites corner
+	 * @param y The vertical position of the sprites corner
+	 */
+	public void draw(Graphics2D g2, int bucket, int x, int y) {
+
+		g2.drawImage(images[bucket], x + offsetX[bucket], y + offsetY[bucket], null);
+	}
+}
@@ -1,9 +1,7 @@
 
 package uk.org.whybrow.spaceinvader;
 
-import java.awt.font.TextLayout;
 import java.awt.Color;
-import java.awt.Graphics2D;
 import java.awt.Font;
 
 /**
@@ -26,12 +24,23 @@ public class ScoreText {
 	/** The vertical postion to render at **/
 	private int y;
 	/** The colour to render this font in **/
-	private Color colour;
+	private Color colour = Color.WHITE;
 	/** Records when the colour of the text was changed **/
 	private long colourChange;
 	/** Time to keep the colour change before changing back **/
 	private int changeTime = 300;
 
+	/** The atlas the score is drawn from, for the current colour **/
+	private GlyphAtlas atlas;
+	/** The colour of the current atlas **/
+	private Color atlasColour;
+	/** The characters of the score as last laid out **/
+	private char[] text = new char[20];
+	/** The number of characters of the score as last laid out **/
+	private int length = 0;
+	/** The score when it was last laid out **/
+	private long laidOut;
+
 	/**
 	 * Create a new score text
 	 *
@@ -51,24 +60,33 @@ public class ScoreText {
 	}
 
 	/**
-	 * Draw the PopEntites text
+	 * Add the score text to a snapshot of the stage
 	 *
-	 * @param g2 The graphics context to draw onto
+	 * @param frame The snapshot being taken
 	 */
-	public void draw(Graphics2D g2) {
-
-		TextLayout t = new TextLayout(score + "", font, g2.getFontRenderContext());
+	public void snapshot(FrameSnapshot frame) {
 
 		//Convert the colour back to white after the alloted time
 
-		if(System.currentTimeMillis() - colourChange > changeTime) {
+		if(game.getTime() - colourChange > changeTime) {
 			colour = Color.WHITE;
 		}
 
-		//Draw the text to the screen
+		//Only look up the atlas or lay the text out again if they changed
+
+		if(colour != atlasColour) {
+			atlas = GlyphAtlas.get(font, colour);
+			atlasColour = colour;
+		}
+
+		if(length == 0 || score != laidOut) {
+			length = GlyphAtlas.format(score, text);
+			laidOut = score;
+		}
+
+		//Add the text, which is copied so can be laid out again straight away
 
-		g2.setColor(colour);
-		t.draw(g2, x, y);
+		frame.text(atlas, text, length, x, y, x, y);
 	}
 
 	/**
@@ -77,7 +95,7 @@ public class ScoreText {
 	 */
 	public void red() {
 
-		colourChange = System.currentTimeMillis();
+		colourChange = game.getTime();
 		this.colour = Color.RED;
 	}
 
@@ -87,7 +105,7 @@ public class ScoreText {
 	 */
 	public void green() {
 
-		colourChange = System.currentTimeMillis();
+		colourChange = game.getTime();
 		this.colour = Color.GREEN;
 	}
 
@@ -0,0 +1,393 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import java.awt.Image;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+
+/**
+ * Holds every shell fired by the tanks in a game. Rather than each shell
+ * being its own entity object, the store keeps the state of all shells in
+ * arrays of primitives, one element per shell, and moves and draws them all
+ * in a single loop.
+ *
+ * Live shells are always packed at the start of the arrays. When a shell is
+ * removed the last live shell is moved into its place, so removing is cheap
+ * and the space is reused by the next shell fired. The arrays only grow when
+ * more shells are live at once than ever before, so firing a shell does not
+ * allocate anything.
+ *
+ * A shell fired at an angle moves along its angle, its position is the top
+ * left corner of the shell sprite before rotation, which the sprite is
+ * rotated around when drawn. As the angle of a shell never changes, the
+ * extent of its rotated sprite around that corner is worked out once when it
+ * is fired, after which its hitbox is just an offset from its position. It is
+ * drawn from a RotatedSprite, so drawing a shell at an angle costs the same
+ * as drawing one straight.
+ *
+ * @author Marcus Whybrow
+ */
+public class ShellStore implements Collidable {
+
+	/** The image drawn for every shell **/
+	private static final Image SPRITE = SpriteCache.get("sprites/Turret_Shell.png");
+	/** The number of angles the shell sprite is drawn at ahead of time **/
+	private static final int ANGLE_BUCKETS = 64;
+	/** The shell sprite drawn at every angle **/
+	private static final RotatedSprite ROTATED = new RotatedSprite(SPRITE, ANGLE_BUCKETS);
+
+	/** The speed of all shells **/
+	private int speed = 400;
+	/** The game the shells are in **/
+	private Game game;
+
+	/** The number of live shells **/
+	private int count = 0;
+
+	/** The horizontal position of each shell **/
+	private double[] x = new double[32];
+	/** The vertical position of each shell **/
+	private double[] y = new double[32];
+	/** The horizontal position of each shell after the previous game loop **/
+	private double[] prevX = new double[32];
+	/** The vertical position of each shell after the previous game loop **/
+	private double[] prevY = new double[32];
+	/** The cosine of the angle of each shell **/
+	private double[] cos = new double[32];
+	/** The sine of the angle of each shell **/
+	private double[] sin = new double[32];
+	/** The left of each shells rotated sprite, relative to its position **/
+	private double[] left = new double[32];
+	/** The top of each shells rotated sprite, relative to its position **/
+	private double[] top = new double[32];
+	/** The right of each shells rotated sprite, relative to its position **/
+	private double[] right = new double[32];
+	/** The bottom of each shells rotated sprite, relative to its position **/
+	private double[] bottom = new double[32];
+	/** The angle bucket each shell is drawn with **/
+	private int[] bucket = new int[32];
+	/** True if the shell cannot hurt the invader and is useless **/
+	private boolean[] done = new boolean[32];
+	/** The tank that fired each shell **/
+	private TankEntity[] owner = new TankEntity[32];
+	/** The proxy number of each shell in the collision grid **/
+	private int[] proxy = new int[32];
+
+	/** Reused for the hitbox of whichever shell is being looked at **/
+	private Rectangle box = new Rectangle();
+
+	/**
+	 * Create an empty shell store
+	 *
+	 * @param game The game the shells are in
+	 */
+	public ShellStore(Game game) {
+
+		this.game = game;
+	}
+
+	/**
+	 * Fire a new shell
+	 *
+	 * @param tank The tank firing the shell
+	 * @param fromX The horizontal position to fire from
+	 * @param fromY The vertical position to fire from
+	 * @param angle The angle to fire at in radians, 0 is straight up
+	 */
+	public void fire(TankEntity tank, int fromX, int fromY, double angle) {
+
+		if(count == x.length) {
+			grow();
+		}
+
+		int i = count++;
+
+		x[i] = prevX[i] = fromX;
+		y[i] = prevY[i] = fromY;
+		cos[i] = Math.cos(angle);
+		sin[i] = Math.sin(angle);
+		bucket[i] = ROTATED.bucket(angle);
+		done[i] = false;
+		owner[i] = tank;
+
+		tank.activeShells++;
+		game.metrics.shellsFired++;
+
+		//The corners of the sprite after rotating around the top left corner
+
+		double w = SPRITE.getWidth(null), h = SPRITE.getHeight(null);
+		double c = cos[i], s = sin[i];
+
+		double x1 = - h * s, y1 = h * c;
+		double x2 = w * c, y2 = w * s;
+		double x3 = x1 + x2, y3 = y1 + y2;
+
+		left[i] = Math.min(Math.min(0, x1), Math.min(x2, x3));
+		right[i] = Math.max(Math.max(0, x1), Math.max(x2, x3));
+		top[i] = Math.min(Math.min(0, y1), Math.min(y2, y3));
+		bottom[i] = Math.max(Math.max(0, y1), Math.max(y2, y3));
+
+		proxy[i] = game.grid.add(this, i, hitbox(i));
+	}
+
+	/**
+	 * Move every shell, removing shells that have left the stage
+	 *
+	 * @param delta The time since the last game loop
+	 */
+	public void move(long delta) {
+
+		double distance = speed * delta / 1000.0;
+		double invaderTop = game.invaderTop();
+
+		for(int i = 0; i < count; i++) {
+
+			prevX[i] = x[i];
+			prevY[i] = y[i];
+
+			x[i] += distance * sin[i];
+			y[i] -= distance * cos[i];
+
+			Rectangle hitbox = hitbox(i);
+
+			//Check whether the shell 'is done' this game loop, once it is
+			//above every invader
+
+			if(!done[i] && (hitbox.getMaxY() < invaderTop || hitbox.getMaxY() < 0)) {
+				done[i] = true;
+				owner[i].activeShells--;
+			}
+
+			//Remove if off screen, otherwise let the collision grid know where
+			//the shell is for checking whether it hit the invader
+
+			if(hitbox.getMaxY() < 0) {
+				remove(i);
+				i--;
+			} else {
+				game.grid.update(proxy[i], hitbox);
+			}
+		}
+	}
+
+	/**
+	 * Add every shell to a snapshot of the stage, to be drawn between its
+	 * previous and current position
+	 *
+	 * @param frame The snapshot being taken
+	 */
+	public void snapshot(FrameSnapshot frame) {
+
+		frame.startShells(ROTATED);
+
+		for(int i = 0; i < count; i++) {
+			frame.shell(bucket[i], prevX[i], prevY[i], x[i], y[i]);
+		}
+	}
+
+	/**
+	 * The collision grid found a shell overlapping an invader, so the shell
+	 * has hit it. Only hits on the player's invader count against the score.
+	 *
+	 * @param index The shell that hit
+	 * @param other The invader
+	 */
+	public void collided(int index, Entity other) {
+
+		if(other != game.invader) {
+			remove(index);
+			return;
+		}
+
+		Rectangle hitbox = hitbox(index);
+
+		if(!game.invader.getShieldIsOn()) {
+
+			//Update the score
+
+			game.scorePop("-100", (int) hitbox.getCenterX(), (int) hitbox.getCenterY(), Color.RED);
+			game.modScore(-100);
+			game.metrics.hitsTaken++;
+
+			//Deny the player the 'perfect' bonus this level
+
+			game.beenHit = true;
+		} else {
+			game.scorePop("x", (int) hitbox.getCenterX(), (int) hitbox.getCenterY(), Color.GREEN);
+		}
+
+		remove(index);
+	}
+
+	/**
+	 * Remove every shell
+	 *
+	 */
+	public void clear() {
+
+		for(int i = 0; i < count; i++) {
+			if(!done[i]) {
+				owner[i].activeShells--;
+			}
+			owner[i] = null;
+		}
+
+		count = 0;
+	}
+
+	/**
+	 * Get the number of live shells
+	 *
+	 * @return The number of shells
+	 */
+	public int size() {
+
+		return count;
+	}
+
+	/**
+	 * Get the horizontal position of a live shell
+	 *
+	 * @param i The shell, 0 to size() - 1
+	 * @return The position of the top left corner before rotation
+	 */
+	public double getX(int i) {
+
+		return x[i];
+	}
+
+	/**
+	 * Get the vertical position of a live shell
+	 *
+	 * @param i The shell, 0 to size() - 1
+	 * @return The position of the top left corner before rotation
+	 */
+	public double getY(int i) {
+
+		return y[i];
+	}
+
+	/**
+	 * Get the horizontal speed of a live shell
+	 *
+	 * @param i The shell, 0 to size() - 1
+	 * @return The speed in pixels per second, positive to the right
+	 */
+	public double getVelocityX(int i) {
+
+		return speed * sin[i];
+	}
+
+	/**
+	 * Get the vertical speed of a live shell
+	 *
+	 * @param i The shell, 0 to size() - 1
+	 * @return The speed in pixels per second, positive downwards
+	 */
+	public double getVelocityY(int i) {
+
+		return - speed * cos[i];
+	}
+
+	/**
+	 * Remove a shell by moving the last live shell into its place
+	 *
+	 * @param i The shell to remove
+	 */
+	private void remove(int i) {
+
+		if(!done[i]) {
+			owner[i].activeShells--;
+		}
+
+		game.grid.remove(proxy[i]);
+
+		int last = --count;
+
+		if(i != last) {
+			x[i] = x[last];
+			y[i] = y[last];
+			prevX[i] = prevX[last];
+			prevY[i] = prevY[last];
+			cos[i] = cos[last];
+			sin[i] = sin[last];
+			left[i] = left[last];
+			top[i] = top[last];
+			right[i] = right[last];
+			bottom[i] = bottom[last];
+			bucket[i] = bucket[last];
+			done[i] = done[last];
+			owner[i] = owner[last];
+			proxy[i] = proxy[last];
+
+			game.grid.setIndex(proxy[i], i);
+		}
+
+		owner[last] = null;
+	}
+
+	/**
+	 * Work out the hitbox of a shell, the smallest whole pixel rectangle
+	 * holding the rotated sprite
+	 *
+	 * @param i The shell
+	 * @return The hitbox, which is reused on the next call
+	 */
+	private Rectangle hitbox(int i) {
+
+		int minX = (int) Math.floor(left[i] + x[i]), minY = (int) Math.floor(top[i] + y[i]);
+		box.setBounds(minX, minY, (int) Math.ceil(right[i] + x[i]) - minX, (int) Math.ceil(bottom[i] + y[i]) - minY);
+		return box;
+	}
+
+	/**
+	 * Double the size of all of the arrays
+	 *
+	 */
+	private void grow() {
+
+		int size = x.length * 2;
+
+		x = grow(x, size);
+		y = grow(y, size);
+		prevX = grow(prevX, size);
+		prevY = grow(prevY, size);
+		cos = grow(cos, size);
+		sin = grow(sin, size);
+		left = grow(left, size);
+		top = grow(top, size);
+		right = grow(right, size);
+		bottom = grow(bottom, size);
+
+		int[] grownBucket = new int[size];
+		System.arraycopy(bucket, 0, grownBucket, 0, count);
+		bucket = grownBucket;
+
+		boolean[] grownDone = new boolean[size];
+		System.arraycopy(done, 0, grownDone, 0, count);
+		done = grownDone;
+
+		TankEntity[] grownOwner = new TankEntity[size];
+		System.arraycopy(owner, 0, grownOwner, 0, count);
+		owner = grownOwner;
+
+		int[] grownProxy = new int[size];
+		System.arraycopy(proxy, 0, grownProxy, 0, count);
+		proxy = grownProxy;
+	}
+
+	/**
+	 * Copy an array into a larger one
+	 *
+	 * @param array The array to copy
+	 * @param size The size of the new array
+	 * @return The larger array
+	 */
+	private double[] grow(double[] array, int size) {
+
+		double[] grown = new double[size];
+		System.arraycopy(array, 0, grown, 0, count);
+		return grown;
+	}
+}
@@ -1,8 +1,6 @@
 
 package uk.org.whybrow.spaceinvader;
 
-import java.awt.Graphics;
-
 /**
  *
  * @author Marcus Whybrow
@@ -10,63 +8,52 @@ import java.awt.Graphics;
 public class ShieldEntity extends Entity {
 
 	/** The amount of time a single segment will last **/
-	private static int time = 3000;
+	private static final int time = 3000;
 	/** The percentage to last for **/
-	private static int percentage = 20;
-
-	private static ShieldEntity single = new ShieldEntity();
-
-	private ShieldEntity() {
-
-		super(0, 0, "sprites/shield.png");
-
-		EnergyEntity.get().setType(EnergyEntity.SEGMENTED);
-	}
-
-	public static ShieldEntity get() {
+	private static final int percentage = 20;
 
-		return single;
-	}
+	public ShieldEntity(Game game) {
 
-	public void setGame(Game game) {
+		super(0, 0, "sprites/shield.png", game);
 
-		this.game = game;
+		game.energy.setType(EnergyEntity.SEGMENTED);
 	}
 
-	public void draw(Graphics g) {
-
-		if(game.invader.getShieldIsOn() && EnergyEntity.get().getEnergy() > 0) {
-			EnergyEntity.get().setIsVisible(true);
+	public void snapshot(FrameSnapshot frame) {
 
-			g.drawImage(sprite, pos.x, pos.y, null);
-		} else {
-			game.invader.setShieldIsOn(false);
-		}
+		if(game.invader.getShieldIsOn())
+			super.snapshot(frame);
 	}
 
 	public void move(long delta) {
 
 		//if(game.invader.getPowerup() == game.invader.PULSE_SHIELD);
 
-		pos.x = game.invader.pos.x - 55;
-		pos.y = game.invader.pos.y + 5;
+		setX(game.invader.getX() - 55);
+		setY(game.invader.getY() + 5);
 
 		double amount = (double) (percentage * delta) / time;
 
 		for(int i = 80; i >= 0; i -= 20) {
 
-			if(EnergyEntity.get().getEnergy() > i && EnergyEntity.get().getEnergy() - amount < i) {
-				EnergyEntity.get().setEnergy(i);
+			if(game.energy.getEnergy() > i && game.energy.getEnergy() - amount < i) {
+				game.energy.setEnergy(i);
 				game.invader.setShieldIsOn(false);
 				break;
 			}
 		}
 
 		if(game.invader.getShieldIsOn())
-			EnergyEntity.get().decreaseEnergy(amount);
+			game.energy.decreaseEnergy(amount);
+
+		//The shield cannot stay on without energy, this is game logic so it
+		//is decided here rather than when the shield is drawn
 
-		if(EnergyEntity.get().getEnergy() <= 0) {
-			EnergyEntity.get().setIsVisible(false);
+		if(game.energy.getEnergy() <= 0) {
+			game.invader.setShieldIsOn(false);
+			game.energy.setIsVisible(false);
+		} else if(game.invader.getShieldIsOn()) {
+			game.energy.setIsVisible(true);
 		}
 	}
 
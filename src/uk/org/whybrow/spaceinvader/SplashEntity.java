@@ -1,46 +1,35 @@
 
 package uk.org.whybrow.spaceinvader;
 
+import java.awt.Image;
+
 /**
  * The splash entity takes an image and places it at (0,0) in nomral space, it
  * is assumed that the image is the size of the stage, but it can be any size.
  *
  * The images are preselected.
  *
- * Also the splash entity is a singleton class, as it controlls all splashes to
- * the screen
+ * Each game has a single splash entity, as it controlls all splashes to the
+ * screen
  *
  * @author Marcus Whybrow
  */
 public class SplashEntity extends Entity {
 
-	/** The single instance of this class **/
-	private static SplashEntity single = new SplashEntity();
-
 	/** The start splash screen image **/
-	public static final String START = "sprites/start.png";
+	public static final Image START = SpriteCache.get("sprites/start.png");
 	/** The next level splash screen image - for displaying scores **/
-	public static final String NEXT_LEVEL = "sprites/next.png";
+	public static final Image NEXT_LEVEL = SpriteCache.get("sprites/next.png");
 	/** The perfect level splash **/
-	public static final String PERFECT = "sprites/perfect.png";
-
-	/**
-	 * The constuctor is private to ensure it cannot be instantiated from
-	 * ouside this calss
-	 *
-	 */
-	private SplashEntity() {
-
-		super(0, 0, null);
-	}
+	public static final Image PERFECT = SpriteCache.get("sprites/perfect.png");
 
 	/**
-	 * Get the single instance of this class
+	 * Create the splash entity for a game
 	 *
-	 * @return The single instance of SplashEntity
+	 * @param game The game the splashes are shown in
 	 */
-	public static SplashEntity get() {
+	public SplashEntity(Game game) {
 
-		return single;
+		super(0, 0, null, game);
 	}
 }
@@ -0,0 +1,142 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import java.awt.Image;
+import javax.imageio.ImageIO;
+import java.net.URL;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A process wide registry of decoded sprites. Each image resource is decoded
+ * once, the first time it is asked for, and the same Image is handed out to
+ * every caller after that.
+ *
+ * The images returned are shared between all entities, so they must be
+ * treated as read only, never draw onto them. Entities that switch between a
+ * few sprites should keep the returned handles and use
+ * Entity.changeSprite(Image), so that no lookup is needed at all per frame.
+ *
+ * Images can be decoded on any thread, so an AssetLoader can decode them
+ * ahead of time. If an image is asked for while another thread is decoding
+ * it, the caller waits for that decode to finish rather than decoding the
+ * image a second time.
+ *
+ * @author Marcus Whybrow
+ */
+public class SpriteCache {
+
+	/** All images decoded or being decoded, keyed by their resource path **/
+	private static ConcurrentHashMap <String, FutureTask<Image>>images = new ConcurrentHashMap();
+
+	/** The number of requests answered from the cache **/
+	private static AtomicLong hits = new AtomicLong();
+	/** The number of requests that needed the image to be decoded **/
+	private static AtomicLong misses = new AtomicLong();
+
+	/**
+	 * The constructor is private as this class is never instantiated
+	 *
+	 */
+	private SpriteCache() {
+	}
+
+	/**
+	 * Get the shared image for a resource, decoding it if this is the first
+	 * time it has been asked for
+	 *
+	 * @param ref Reference string to path of image
+	 * @return The shared image, or null if it could not be loaded
+	 */
+	public static Image get(String ref) {
+
+		FutureTask<Image> task = images.get(ref);
+
+		if(task != null) {
+			hits.incrementAndGet();
+		} else {
+
+			//Claim the image, if two threads race only the first one decodes it
+
+			final String path = ref;
+
+			FutureTask<Image> created = new FutureTask<Image>(new Callable<Image>() {
+				public Image call() {
+					return decode(path);
+				}
+			});
+
+			task = images.putIfAbsent(ref, created);
+
+			if(task == null) {
+				misses.incrementAndGet();
+				task = created;
+				task.run();
+			} else {
+				hits.incrementAndGet();
+			}
+		}
+
+		//Wait for the decode if another thread is still doing it
+
+		boolean interrupted = false;
+
+		try {
+			while(true) {
+				try {
+					return task.get();
+				} catch(InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} catch(ExecutionException e) {
+			System.err.println("Could not decode image: " + ref);
+			return null;
+		} finally {
+			if(interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Read an image resource from the class path
+	 *
+	 * @param ref Reference string to path of image
+	 * @return The decoded image, or null if it could not be found
+	 */
+	private static Image decode(String ref) {
+
+		try {
+			URL url = SpriteCache.class.getClassLoader().getResource(ref);
+			return ImageIO.read(url);
+		} catch(Exception e) {
+			System.err.println("Could not find image: " + ref);
+			return null;
+		}
+	}
+
+	/**
+	 * Get the number of requests answered without decoding
+	 *
+	 * @return The number of cache hits
+	 */
+	public static long getHits() {
+
+		return hits.get();
+	}
+
+	/**
+	 * Get the number of requests that had to decode an image
+	 *
+	 * @return The number of cache misses
+	 */
+	public static long getMisses() {
+
+		return misses.get();
+	}
+}
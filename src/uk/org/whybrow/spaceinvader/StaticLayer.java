@@ -0,0 +1,196 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+/**
+ * The scenery behind everything else on the stage, the background image and
+ * any entities that rarely move, such as the land, drawn together into one
+ * image so that each frame only has to copy that image.
+ *
+ * The image is made compatible with the screen being drawn to and is opaque,
+ * so Java2D can keep a copy of it in video memory and copy it with the
+ * graphics hardware. It is only drawn again when one of its entities has
+ * moved or changed sprite since it was last drawn, or when it is drawn to a
+ * different screen.
+ *
+ * Entities in the layer are moved by the game like any other entity, they
+ * are just not in the game's entity list. The layer is drawn from a snapshot
+ * of the stage, the entities are added to the snapshot by the game logic and
+ * the composite is only touched by whichever thread draws.
+ *
+ * @author Marcus Whybrow
+ */
+public class StaticLayer {
+
+	/** The image everything else is drawn over **/
+	private Image background;
+	/** The entities drawn over the background, in order **/
+	private EntityList <Entity>entities = new EntityList();
+
+	/** Every layer drawn together, null until first drawn **/
+	private BufferedImage composite;
+	/** The screen the composite was made for **/
+	private GraphicsConfiguration config;
+	/** Where each entity was drawn in the composite, horizontally **/
+	private int[] drawnX = new int[4];
+	/** Where each entity was drawn in the composite, vertically **/
+	private int[] drawnY = new int[4];
+	/** The sprite each entity was drawn with in the composite **/
+	private Image[] drawnSprite = new Image[4];
+	/** The number of entities drawn in the composite **/
+	private int drawnCount = 0;
+	/** True if the entities in the layer have changed since it was drawn **/
+	private boolean stale = true;
+
+	/** The number of times the composite has been drawn **/
+	private long rebuilds = 0;
+
+	/**
+	 * Create a layer holding only a background
+	 *
+	 * @param background The image everything else is drawn over
+	 */
+	public StaticLayer(Image background) {
+
+		this.background = background;
+	}
+
+	/**
+	 * Add an entity to the layer, in front of those already in it
+	 *
+	 * @param entity The entity to add
+	 */
+	public void add(Entity entity) {
+
+		entities.add(entity);
+	}
+
+	/**
+	 * Remove every entity from the layer, leaving the background
+	 *
+	 */
+	public void clear() {
+
+		entities.clear();
+	}
+
+	/**
+	 * Move every entity in the layer
+	 *
+	 * @param delta The time since the last game loop
+	 */
+	public void move(long delta) {
+
+		for(int i = 0; i < entities.size(); i++) {
+			entities.get(i).move(delta);
+		}
+	}
+
+	/**
+	 * Add every entity in the layer to a snapshot of the stage, as the first
+	 * records of the snapshot
+	 *
+	 * @param frame The snapshot being taken
+	 */
+	public void snapshot(FrameSnapshot frame) {
+
+		for(int i = 0; i < entities.size(); i++) {
+			entities.get(i).snapshot(frame);
+		}
+
+		frame.endScenery();
+	}
+
+	/**
+	 * Draw the layer, drawing the composite again first if anything in it has
+	 * changed
+	 *
+	 * @param g2 The graphics context to draw to
+	 * @param frame The snapshot holding the layer's entities
+	 * @param alpha How far between the last two game loops to draw, 0 to 1
+	 */
+	public void draw(Graphics2D g2, FrameSnapshot frame, double alpha) {
+
+		GraphicsConfiguration target = g2.getDeviceConfiguration();
+
+		if(composite == null || target != config) {
+			config = target;
+			composite = target.createCompatibleImage(background.getWidth(null), background.getHeight(null), Transparency.OPAQUE);
+			stale = true;
+		}
+
+		//Check whether any entity has moved or changed sprite
+
+		int count = frame.getSceneryEnd();
+
+		if(drawnX.length < count) {
+			drawnX = new int[count];
+			drawnY = new int[count];
+			drawnSprite = new Image[count];
+			stale = true;
+		}
+
+		if(count != drawnCount) {
+			stale = true;
+		}
+
+		for(int i = 0; i < count; i++) {
+			if(frame.getX(i, alpha) != drawnX[i] || frame.getY(i, alpha) != drawnY[i] || frame.getImage(i) != drawnSprite[i]) {
+				stale = true;
+			}
+		}
+
+		if(stale) {
+			rebuild(frame, alpha);
+		}
+
+		g2.drawImage(composite, 0, 0, null);
+	}
+
+	/**
+	 * Get the number of times the composite has been drawn, which should only
+	 * go up when something in the layer changes
+	 *
+	 * @return The number of times drawn
+	 */
+	public long getRebuilds() {
+
+		return rebuilds;
+	}
+
+	/**
+	 * Draw the background and every entity into the composite, with the best
+	 * quality as it is not done often
+	 *
+	 * @param frame The snapshot holding the layer's entities
+	 * @param alpha How far between the last two game loops to draw, 0 to 1
+	 */
+	private void rebuild(FrameSnapshot frame, double alpha) {
+
+		Graphics2D g2 = composite.createGraphics();
+
+		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+		g2.drawImage(background, 0, 0, null);
+
+		drawnCount = frame.getSceneryEnd();
+		frame.draw(g2, 0, drawnCount, alpha);
+
+		for(int i = 0; i < drawnCount; i++) {
+			drawnX[i] = frame.getX(i, alpha);
+			drawnY[i] = frame.getY(i, alpha);
+			drawnSprite[i] = frame.getImage(i);
+		}
+
+		g2.dispose();
+
+		stale = false;
+		rebuilds++;
+	}
+}
@@ -2,24 +2,40 @@
 package uk.org.whybrow.spaceinvader;
 
 import java.awt.Rectangle;
-import java.util.ArrayList;
+import java.awt.Image;
 
 /**
  * The tank is contolled by the computer, it can move horizontally only, and has
  * multiple choices when firing at the invader (player). Firing is controlled by
  * probability, where the higher the level the higher the chance of a special
  * atack being performed, ensuring the difficulty increases as the level does.
+ * How quickly it increases is set by the game's Difficulty.
+ *
+ * In swarm mode there are many invaders, each tank follows whichever one is
+ * nearest to it. Finding the nearest invader is only done every so often,
+ * with the tanks spread over that time so they do not all look at once.
+ *
+ * A tank is independent, it can be moved at the same time as other tanks. It
+ * follows where its invader was at the end of the last game loop, and holds
+ * back the shells and power ups it releases until its move is committed.
  *
  * @author Marcus Whybrow
  */
 public class TankEntity extends Entity {
 
+	/** The sprite used when the tank is not firing **/
+	private static final Image IDLE_SPRITE = SpriteCache.get("sprites/Turret_03.png");
+	/** The sprite used when the left barrel fires **/
+	private static final Image LEFT_FIRE_SPRITE = SpriteCache.get("sprites/Turret_01.png");
+	/** The sprite used when the right barrel fires **/
+	private static final Image RIGHT_FIRE_SPRITE = SpriteCache.get("sprites/Turret_02.png");
+
 	private long lastFrameChange;
 	private long frameDuration = 200;
 	private int frameNumber;
 
 	/** The current velocity of the tank **/
-	private int currentVelocity = 0;
+	private double currentVelocity = 0;
 	/** The acceleration per second when moving **/
 	private int acceleration = 1200;
 	/** The resistane to motion per second (even when not accelerating) **/
@@ -27,6 +43,15 @@ public class TankEntity extends Entity {
 	/** The maximum obtainable speed **/
 	private int maxSpeed = 300;
 
+	/** The invader being followed **/
+	private InvaderEntity target;
+	/** The hitbox of the invader being followed **/
+	private Rectangle targetBox = new Rectangle();
+	/** The time to look for the nearest invader again **/
+	private long retargetAt;
+	/** The time between looking for the nearest invader, in milliseconds **/
+	private static final int RETARGET_TIME = 128;
+
 	/** The x value of the invader **/
 	private int shipX;
 	/** The y value of the invader **/
@@ -40,23 +65,23 @@ public class TankEntity extends Entity {
 	/** The x postion the last time the tank changed direcction **/
 	private int lastFlipPos;
 	/** The velocity og the tank the last game loop **/
-	private int lastVelocity;
+	private double lastVelocity;
 
 	/** The most recent time when the tank fired **/
 	private long lastFired;
 	/** True if the right barrel of the tank fired last **/
 	private boolean rightLastFired = true;
-	/** A list of all the shells used in game fired by the tank **/
-	protected ArrayList <ShellEntity>shells = new ArrayList();
+	/** The number of shells fired by this tank that are not yet 'done' **/
+	protected int activeShells = 0;
 
 	/** The currently employed fire mode **/
 	private int fireMode = NORMAL;
 	/** Normal single shot, the easiest to avoid **/
-	private static final int NORMAL = 1;
+	protected static final int NORMAL = 1;
 	/** Fires multiple shots in a single burst **/
-	private static final int BURST = 2;
+	protected static final int BURST = 2;
 	/** Fires multipe shots in different directions **/
-	private static final int ARRAY = 3;
+	protected static final int ARRAY = 3;
 
 	/** The time when firing became possible again **/
 	private double then = 0;
@@ -65,14 +90,32 @@ public class TankEntity extends Entity {
 	/** The last time we attempted to do a special move **/
 	private double lastCheck;
 	/** The time delay between checking to do a special move **/
-	private int specialDelay = 5000 - (int) (game.currentLevel.getScore() * 50);
+	private int specialDelay = game.difficulty.getSpecialDelay(game.currentLevel.getScore());
 
 	/** The number of shells fired so far, whilst in burst fire mode **/
 	private int burstCount = 0;
 	/** The maximum shells to fire in burst mode **/
-	private int burstLimit = 5;
+	private int burstLimit = game.difficulty.getBurstLimit();
 	/** The number of shells to fire in array fire mode **/
-	private int arrayCount = 3;
+	private int arrayCount = game.difficulty.getArrayCount();
+
+	/** Where each shell fired this game loop is fired from horizontally **/
+	private int[] pendingX = new int[4];
+	/** Where each shell fired this game loop is fired from vertically **/
+	private int[] pendingY = new int[4];
+	/** The angle of each shell fired this game loop **/
+	private double[] pendingAngle = new double[4];
+	/** The number of shells fired this game loop **/
+	private int pendingShells = 0;
+	/** True if a power up was released this game loop **/
+	private boolean pendingPowerUp = false;
+	/** True if the power up released is the speed boost **/
+	private boolean powerUpIsSpeed;
+	/** Where across the stage the power up released is, 0 to 1 **/
+	private double powerUpPosition;
+
+	/** The generator all of this tanks random decisions are taken from **/
+	private GameRandom random;
 
 	/**
 	 * Create the tank entity
@@ -84,7 +127,17 @@ public class TankEntity extends Entity {
 	public TankEntity(int x, int y, Game game) {
 		
 		super(x, y, "sprites/Turret_03.png", game);
-		pos.x -= sprite.getWidth(null)/2;
+		setX(getX() - getSprite().getWidth(null)/2);
+
+		random = game.random.split();
+
+		//Spread the tanks over the time between looking for a target
+
+		retargetAt = game.getTime() + (game.tanks.size() * game.getStep()) % RETARGET_TIME;
+
+		//Allow a special move to be considered straight away
+
+		lastCheck = game.getTime() - specialDelay;
 	}
 
 	/**
@@ -120,19 +173,14 @@ public class TankEntity extends Entity {
 
 			//Chance of special fire mode
 
-			if(System.currentTimeMillis() - lastCheck >= specialDelay && fireMode == NORMAL) {
+			if(game.getTime() - lastCheck >= specialDelay && fireMode == NORMAL) {
 
-				chance = Math.random() * 100;
+				chance = random.nextDouble() * 100;
 
 				//Probability of special attacks as a percentage
 
-				burstProb = 3 + (int) (game.currentLevel.getScore() / 2);
-				arrayProb = 2 + (int) (game.currentLevel.getScore() / 2);
-
-				if(burstProb > 50)
-					burstProb = 50;
-				if(arrayProb > 40)
-					arrayProb = 50;
+				burstProb = game.difficulty.getBurstChance(game.currentLevel.getScore());
+				arrayProb = game.difficulty.getArrayChance(game.currentLevel.getScore());
 
 				burstTop = 100;
 				burstBottom = burstTop - burstProb;
@@ -148,11 +196,13 @@ public class TankEntity extends Entity {
 					fireMode = ARRAY;
 				}
 
-				if(chance > 90) {
-					game.entities.add( new PowerEntity(game) );
+				if(chance > 100 - game.difficulty.getPowerUpChance()) {
+					pendingPowerUp = true;
+					powerUpIsSpeed = random.nextDouble() > 0.5;
+					powerUpPosition = random.nextDouble();
 				}
 
-				lastCheck = System.currentTimeMillis();
+				lastCheck = game.getTime();
 			}
 			
 			//Fire current fire mode
@@ -170,54 +220,79 @@ public class TankEntity extends Entity {
 			}
 		}
 
-		//Actually move after the logic has completed
+		//Actually move after the logic has completed, the game moves every
+		//entity by its velocity once all have had their turn
 
-		pos.x += (currentVelocity * delta) / 1000;
+		setVelocity((int) currentVelocity, 0);
 
 		//Reset sprite after shot
 
-		if(System.currentTimeMillis() - lastFired > 70) {
-
-			//TODO make tank sprite change more efficient
-			changeSprite("sprites/Turret_03.png");
+		if(game.getTime() - lastFired > 70) {
+			changeSprite(IDLE_SPRITE);
 		}
 
 		lastVelocity = currentVelocity;
 	}
 
 	/**
-	 * When normal fire is the active fire mode, this is called each game loop,
-	 * fires a single shot after a small random wait, if all current shells are
-	 * 'done'.
+	 * The tank moves on its own, reading only where the invaders were at the
+	 * end of the last game loop
+	 *
+	 * @return True
 	 */
-	private void normalFire() {
+	public boolean isIndependent() {
 
-		//Work out position
+		return true;
+	}
 
-		boolean noneActive = true;
+	/**
+	 * Release the power up and fire the shells held back during move()
+	 *
+	 */
+	public void commit() {
 
-		//Determining whether firing is possible
+		if(pendingPowerUp) {
+			game.entities.add( new PowerEntity(game, powerUpIsSpeed, powerUpPosition) );
+			pendingPowerUp = false;
+		}
 
-		for(int i = 0; i < shells.size(); i++) {
-			
-			if(shells.get(i).isDone()) {
-				shells.remove(i);
-			} else {
-				noneActive = false;
-				break;
-			}
+		for(int i = 0; i < pendingShells; i++) {
+			game.shells.fire(this, pendingX[i], pendingY[i], pendingAngle[i]);
 		}
 
+		pendingShells = 0;
+	}
+
+	/**
+	 * Force the fire mode, the tank goes back to normal fire once a special
+	 * attack is done
+	 *
+	 * @param fireMode NORMAL, BURST or ARRAY
+	 */
+	protected void setFireMode(int fireMode) {
+
+		if(fireMode == NORMAL || fireMode == BURST || fireMode == ARRAY) {
+			this.fireMode = fireMode;
+		}
+	}
+
+	/**
+	 * When normal fire is the active fire mode, this is called each game loop,
+	 * fires a single shot after a small random wait, if all current shells are
+	 * 'done'.
+	 */
+	private void normalFire() {
+
 		//If can fire, think about firing
 
-		if(noneActive) {
+		if(activeShells == 0) {
 
 			if(then == 0) {
-				then = System.currentTimeMillis();
-				time = Math.random() * 1000 + 200;
+				then = game.getTime();
+				time = random.nextDouble() * 1000 + 200;
 			}
 
-			if(System.currentTimeMillis() - then > time) {
+			if(game.getTime() - then > time) {
 
 				//fire
 
@@ -233,7 +308,7 @@ public class TankEntity extends Entity {
 	 */
 	private void burstFire() {
 
-		if(burstCount < burstLimit && System.currentTimeMillis() - lastFired > 10) {
+		if(burstCount < burstLimit && game.getTime() - lastFired > 10) {
 			fire(false);
 			burstCount ++;
 		} else {
@@ -264,37 +339,39 @@ public class TankEntity extends Entity {
 	private void fire(boolean randRotate) {
 
 		int x, y;			//x and y offset to fire the shell from
-		ShellEntity shell;  //The shell entity created
 
 		//Alternatly fire the left, then the right barrel of the tank
 
 		if(rightLastFired) {
-			x = pos.x + 6;
-			y = pos.y;
-			changeSprite("sprites/Turret_01.png");
+			x = getX() + 6;
+			y = getY();
+			changeSprite(LEFT_FIRE_SPRITE);
 			rightLastFired = false;
 		} else {
-			x = pos.x + 19;
-			y = pos.y;
-			changeSprite("sprites/Turret_02.png");
+			x = getX() + 19;
+			y = getY();
+			changeSprite(RIGHT_FIRE_SPRITE);
 			rightLastFired = true;
 		}
 
-		//Create the shell
+		//Fire the shell, if applicable at a random angle, once the move is
+		//committed
 
-		shell = new ShellEntity(x, y, game);
+		if(pendingShells == pendingX.length) {
+			pendingX = grow(pendingX);
+			pendingY = grow(pendingY);
 
-		//If applicable randomly rotate the shell
-
-		if(randRotate)
-			shell.randRotate();
-
-		//Add the shell to the render list and the shell list
+			double[] grown = new double[pendingShells * 2];
+			System.arraycopy(pendingAngle, 0, grown, 0, pendingShells);
+			pendingAngle = grown;
+		}
 
-		game.entities.add(shell);
-		shells.add(shell);
+		pendingX[pendingShells] = x;
+		pendingY[pendingShells] = y;
+		pendingAngle[pendingShells] = randRotate ? (random.nextDouble() * 90 - 45) * Math.PI / 180 : 0;
+		pendingShells++;
 
-		lastFired = System.currentTimeMillis();
+		lastFired = game.getTime();
 	}
 
 	/**
@@ -304,9 +381,17 @@ public class TankEntity extends Entity {
 	 */
 	private void normalMove(long delta) {
 
+		//Follow the nearest invader
+
+		if(target == null || game.getTime() >= retargetAt) {
+			Rectangle box = getHitbox();
+			target = game.nearestInvader((int) box.getCenterX(), (int) box.getCenterY());
+			retargetAt = game.getTime() + RETARGET_TIME;
+		}
+
 		//Get the ships hitbox (actual stage position)
 
-		Rectangle shipHitbox = game.invader.getHitbox();
+		Rectangle shipHitbox = target.getLastHitbox(targetBox);
 		shipX = (int) shipHitbox.getCenterX();
 		shipY = (int) shipHitbox.getCenterY();
 
@@ -330,12 +415,12 @@ public class TankEntity extends Entity {
 		//Apply correct resistance
 
 		if(currentVelocity > 0) {
-			currentVelocity -= (resistance * delta) / 1000;
+			currentVelocity -= resistance * delta / 1000.0;
 			if(currentVelocity < 0) {
 				currentVelocity = 0;
 			}
 		} else if(currentVelocity < 0) {
-			currentVelocity += (resistance * delta) / 1000;
+			currentVelocity += resistance * delta / 1000.0;
 			if(currentVelocity > 0) {
 				currentVelocity = 0;
 			}
@@ -344,21 +429,21 @@ public class TankEntity extends Entity {
 		//If we changed direction this loop, take note of the x position
 
 		if(dirHasChanged()) {
-			lastFlipPos = (int) pos.x;
+			lastFlipPos = getX();
 		}
 
 		//If we know we should be going the other way, but we just changed
 		//direction, dont bother.
 
 		if(tryingToChange()) {
-			if(Math.abs(pos.x - lastFlipPos) < 100) {
+			if(Math.abs(getX() - lastFlipPos) < 100) {
 				currentVelocity = 0;
 			}
 		}
 
 		//Do not go off the end of the rails
 
-		if((currentVelocity > 0 && pos.x > game.image.getWidth(null) - sprite.getWidth(null)) || (currentVelocity < 0 && pos.x < 0)) {
+		if((currentVelocity > 0 && getX() > game.image.getWidth(null) - getSprite().getWidth(null)) || (currentVelocity < 0 && getX() < 0)) {
 			currentVelocity = 0;
 		}
 	}
@@ -400,9 +485,9 @@ public class TankEntity extends Entity {
 	private void adjustAcceleration(boolean right, long delta) {
 
 		if(right) {
-			currentVelocity += (acceleration * delta) / 1000;
+			currentVelocity += acceleration * delta / 1000.0;
 		} else {
-			currentVelocity -= (acceleration * delta) / 1000;
+			currentVelocity -= acceleration * delta / 1000.0;
 		}
 		
 		if(currentVelocity > maxSpeed) {
@@ -412,13 +497,26 @@ public class TankEntity extends Entity {
 		}
 	}
 
+	/**
+	 * Copy an array into one twice the size
+	 *
+	 * @param array The array to copy
+	 * @return The larger array
+	 */
+	private int[] grow(int[] array) {
+
+		int[] grown = new int[array.length * 2];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
 	/**
 	 * Update the shipIsRight variable
 	 */
 	public void setShipIsRight() {
-		if(shipX < (int) pos.x + (sprite.getWidth(null) / 2) ) {
+		if(shipX < getX() + (getSprite().getWidth(null) / 2) ) {
 			shipIsRight = false;
-		} else if (shipX > (int) pos.x + (sprite.getWidth(null) / 2) ) {
+		} else if (shipX > getX() + (getSprite().getWidth(null) / 2) ) {
 			shipIsRight = true;
 		}
 	}
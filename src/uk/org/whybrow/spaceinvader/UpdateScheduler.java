@@ -0,0 +1,186 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Moves independent entities across several threads. An independent entity
+ * only changes itself during move(), reading other entities as they were at
+ * the end of the last game loop, and holds back anything that changes the
+ * rest of the game until commit() is called.
+ *
+ * The entities given for a game loop are split into ranges on a fork join
+ * pool, then once every move has finished each entity's held back changes
+ * are committed one at a time in the order the entities were given. Which
+ * thread moved which entity makes no difference to the result, so a game
+ * plays out the same with any number of threads, and a recording replays
+ * the same as it was played.
+ *
+ * With few entities, or only one thread, everything is moved on the calling
+ * thread as splitting the work would cost more than it saves.
+ *
+ * @author Marcus Whybrow
+ */
+public class UpdateScheduler {
+
+	/** The most entities moved by one task, ranges larger are split in two **/
+	private static final int BATCH_SIZE = 64;
+
+	/** The number of threads to move entities on **/
+	private int threads;
+	/** Moves the entities, created the first time it is needed **/
+	private ForkJoinPool pool;
+
+	/** The entities to move this game loop, in order **/
+	private Entity[] batch = new Entity[64];
+	/** The number of entities to move **/
+	private int count = 0;
+
+	/** The time step the entities are being moved by **/
+	private long delta;
+	/** The game logic step the entities are being moved in **/
+	private long tick;
+
+	/**
+	 * Create a scheduler
+	 *
+	 * @param threads The number of threads to move entities on
+	 */
+	public UpdateScheduler(int threads) {
+
+		setThreads(threads);
+	}
+
+	/**
+	 * Set the number of threads to move entities on, takes effect from the
+	 * next game loop
+	 *
+	 * @param threads The number of threads, at least 1
+	 */
+	public void setThreads(int threads) {
+
+		threads = Math.max(1, threads);
+
+		if(threads != this.threads && pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+
+		this.threads = threads;
+	}
+
+	/**
+	 * Get the number of threads entities are moved on
+	 *
+	 * @return The number of threads
+	 */
+	public int getThreads() {
+
+		return threads;
+	}
+
+	/**
+	 * Add an independent entity to be moved in the next run
+	 *
+	 * @param entity The entity
+	 */
+	public void add(Entity entity) {
+
+		if(count == batch.length) {
+			Entity[] grown = new Entity[count * 2];
+			System.arraycopy(batch, 0, grown, 0, count);
+			batch = grown;
+		}
+
+		batch[count++] = entity;
+	}
+
+	/**
+	 * Move every entity added since the last run, then commit their changes
+	 * in the order they were added
+	 *
+	 * @param delta The time since the last game loop
+	 * @param tick The game logic step
+	 */
+	public void run(long delta, long tick) {
+
+		this.delta = delta;
+		this.tick = tick;
+
+		if(threads > 1 && count > BATCH_SIZE) {
+			if(pool == null) {
+				pool = new ForkJoinPool(threads);
+			}
+			pool.invoke(new Range(0, count));
+		} else {
+			move(0, count);
+		}
+
+		//Apply the changes each entity held back, always in the same order
+
+		for(int i = 0; i < count; i++) {
+			batch[i].commit();
+			batch[i] = null;
+		}
+
+		count = 0;
+	}
+
+	/**
+	 * Move a range of the entities
+	 *
+	 * @param from The first entity to move
+	 * @param to One past the last entity to move
+	 */
+	private void move(int from, int to) {
+
+		for(int i = from; i < to; i++) {
+			EntityUpdateEvent moved = EntityUpdateEvent.start(batch[i], tick);
+			batch[i].move(delta);
+			LoopPhaseEvent.end(moved);
+		}
+	}
+
+	/**
+	 * A range of entities to move on the pool, split in two until small
+	 * enough to move in one go
+	 *
+	 */
+	private class Range extends RecursiveAction {
+
+		/** Ranges are never serialised, but RecursiveAction is Serializable **/
+		private static final long serialVersionUID = 1L;
+
+		/** The first entity to move **/
+		private int from;
+		/** One past the last entity to move **/
+		private int to;
+
+		/**
+		 * Create a range
+		 *
+		 * @param from The first entity to move
+		 * @param to One past the last entity to move
+		 */
+		public Range(int from, int to) {
+
+			this.from = from;
+			this.to = to;
+		}
+
+		/**
+		 * Move the range, or split it if it is too large
+		 *
+		 */
+		protected void compute() {
+
+			if(to - from <= BATCH_SIZE) {
+				move(from, to);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Range(from, middle), new Range(middle, to));
+			}
+		}
+	}
+}
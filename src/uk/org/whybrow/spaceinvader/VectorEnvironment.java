@@ -0,0 +1,360 @@
+
+package uk.org.whybrow.spaceinvader;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Steps many GameEnvironments together, one action each, for training on a
+ * batch of episodes at once. The observations of every environment are
+ * kept one after another in a single array, OBSERVATION_SIZE floats each,
+ * and the rewards and whether each episode ended are kept in arrays beside
+ * it, all of which are reused by every step.
+ *
+ * An environment whose episode ends is reset straight away with the next
+ * seed for it, so every environment always has an episode to step. Its
+ * observation is then the start of the new episode, and the last
+ * observation of the episode that ended is kept in the final observations.
+ *
+ * The environments are split between a number of threads that live as long
+ * as the vector. The calling thread steps the first share itself while the
+ * others step the rest, and the threads are woken and waited for by parking
+ * rather than through a pool, so stepping the vector makes nothing beyond
+ * what each environment makes, and the new game of any episode that is
+ * reset.
+ *
+ * @author Marcus Whybrow
+ */
+public class VectorEnvironment {
+
+	/** The environments, in order **/
+	private GameEnvironment[] environments;
+	/** The observation of every environment, one after another **/
+	private float[] observations;
+	/** The last observation of each episode that ended in the last step **/
+	private float[] finalObservations;
+	/** The reward of each environment in the last step **/
+	private double[] rewards;
+	/** True for each environment whose episode was completed in the last step **/
+	private boolean[] terminated;
+	/** True for each environment whose episode was cut short in the last step **/
+	private boolean[] truncated;
+
+	/** The seed of the first episode of the first environment **/
+	private long seed;
+	/** The number of episodes each environment has started **/
+	private long[] episodes;
+	/** The actions being taken in the current step **/
+	private int[] actions;
+
+	/** The threads stepping every share of the environments but the first **/
+	private Worker[] workers;
+	/** Moves on each step, to wake the workers **/
+	private volatile long generation = 0;
+	/** The number of workers still stepping their share **/
+	private AtomicInteger remaining = new AtomicInteger();
+	/** The thread waiting for the workers **/
+	private volatile Thread caller;
+	/** The first thing to go wrong on a worker during the current step **/
+	private AtomicReference <Throwable>failure = new AtomicReference();
+	/** True once the workers have been told to stop **/
+	private volatile boolean closed = false;
+
+	/**
+	 * Create the environments and the threads to step them
+	 *
+	 * @param count The number of environments
+	 * @param difficulty How hard each level is, shared by every environment
+	 * @param threads The number of threads to step on, including the caller's
+	 */
+	public VectorEnvironment(int count, Difficulty difficulty, int threads) {
+
+		environments = new GameEnvironment[count];
+		observations = new float[count * GameEnvironment.OBSERVATION_SIZE];
+		finalObservations = new float[count * GameEnvironment.OBSERVATION_SIZE];
+		rewards = new double[count];
+		terminated = new boolean[count];
+		truncated = new boolean[count];
+		episodes = new long[count];
+
+		for(int i = 0; i < count; i++) {
+			environments[i] = new GameEnvironment(difficulty, observations, i * GameEnvironment.OBSERVATION_SIZE);
+		}
+
+		//Split the environments into a share for each thread, the first
+		//share is stepped by the caller
+
+		threads = Math.max(1, Math.min(threads, count));
+		workers = new Worker[threads - 1];
+
+		for(int i = 0; i < workers.length; i++) {
+			workers[i] = new Worker(count * (i + 1) / threads, count * (i + 2) / threads);
+			workers[i].start();
+		}
+	}
+
+	/**
+	 * Get the number of environments
+	 *
+	 * @return The number of environments
+	 */
+	public int size() {
+
+		return environments.length;
+	}
+
+	/**
+	 * Get one of the environments, to change how it plays or look at its
+	 * game
+	 *
+	 * @param i The environment
+	 * @return The environment
+	 */
+	public GameEnvironment get(int i) {
+
+		return environments[i];
+	}
+
+	/**
+	 * Start a new episode in every environment. Each environment has its own
+	 * run of seeds, so no two episodes are played with the same seed.
+	 *
+	 * @param seed The seed of the first episode of the first environment
+	 * @return The observations, which are reused by every step
+	 */
+	public float[] reset(long seed) {
+
+		this.seed = seed;
+
+		for(int i = 0; i < environments.length; i++) {
+			episodes[i] = 0;
+			rewards[i] = 0;
+			terminated[i] = false;
+			truncated[i] = false;
+			environments[i].reset(nextSeed(i));
+		}
+
+		return observations;
+	}
+
+	/**
+	 * Step every environment with its action, resetting any whose episode
+	 * ends, and wait for them all
+	 *
+	 * @param actions The action for each environment, as in GameEnvironment
+	 * @throws IllegalStateException If the vector has been closed
+	 */
+	public void step(int[] actions) {
+
+		if(closed) {
+			throw new IllegalStateException("The environments have been closed");
+		}
+
+		if(actions.length < environments.length) {
+			throw new IllegalArgumentException("Expected " + environments.length + " actions, not " + actions.length);
+		}
+
+		this.actions = actions;
+		failure.set(null);
+
+		if(workers.length == 0) {
+			step(0, environments.length);
+			return;
+		}
+
+		//Wake the workers, step the first share, then wait for the rest
+
+		caller = Thread.currentThread();
+		remaining.set(workers.length);
+		generation++;
+
+		for(int i = 0; i < workers.length; i++) {
+			LockSupport.unpark(workers[i]);
+		}
+
+		try {
+			step(0, workers[0].from);
+		} finally {
+			while(remaining.get() > 0) {
+				LockSupport.park(this);
+			}
+		}
+
+		//Rethrow whatever went wrong first on a worker as it was thrown
+
+		Throwable thrown = failure.get();
+
+		if(thrown instanceof RuntimeException) {
+			throw (RuntimeException) thrown;
+		} else if(thrown instanceof Error) {
+			throw (Error) thrown;
+		} else if(thrown != null) {
+			throw new IllegalStateException("An environment failed to step", thrown);
+		}
+	}
+
+	/**
+	 * Get the observations after the last step, OBSERVATION_SIZE floats for
+	 * each environment in order
+	 *
+	 * @return The observations
+	 */
+	public float[] getObservations() {
+
+		return observations;
+	}
+
+	/**
+	 * Get the last observation of each episode that ended in the last step,
+	 * laid out as the observations, only set for those environments
+	 *
+	 * @return The final observations
+	 */
+	public float[] getFinalObservations() {
+
+		return finalObservations;
+	}
+
+	/**
+	 * Get the reward of each environment in the last step
+	 *
+	 * @return The rewards
+	 */
+	public double[] getRewards() {
+
+		return rewards;
+	}
+
+	/**
+	 * Get which environments completed their episode in the last step
+	 *
+	 * @return True for each environment whose episode was completed
+	 */
+	public boolean[] getTerminated() {
+
+		return terminated;
+	}
+
+	/**
+	 * Get which environments had their episode cut short in the last step
+	 *
+	 * @return True for each environment whose episode was cut short
+	 */
+	public boolean[] getTruncated() {
+
+		return truncated;
+	}
+
+	/**
+	 * Stop the threads stepping the environments, the vector cannot be
+	 * stepped afterwards
+	 *
+	 */
+	public void close() {
+
+		closed = true;
+
+		for(int i = 0; i < workers.length; i++) {
+			LockSupport.unpark(workers[i]);
+		}
+	}
+
+	/**
+	 * Step a share of the environments
+	 *
+	 * @param from The first environment
+	 * @param to One past the last environment
+	 */
+	private void step(int from, int to) {
+
+		for(int i = from; i < to; i++) {
+
+			GameEnvironment environment = environments[i];
+
+			rewards[i] = environment.step(actions[i]);
+			terminated[i] = environment.isTerminated();
+			truncated[i] = environment.isTruncated();
+
+			//Keep how the episode ended, then start the next
+
+			if(terminated[i] || truncated[i]) {
+				int at = i * GameEnvironment.OBSERVATION_SIZE;
+				System.arraycopy(observations, at, finalObservations, at, GameEnvironment.OBSERVATION_SIZE);
+				environment.reset(nextSeed(i));
+			}
+		}
+	}
+
+	/**
+	 * Get the seed for the next episode of an environment
+	 *
+	 * @param i The environment
+	 * @return The seed
+	 */
+	private long nextSeed(int i) {
+
+		return seed + i + environments.length * episodes[i]++;
+	}
+
+	/**
+	 * A thread stepping one share of the environments each time it is woken
+	 *
+	 */
+	private class Worker extends Thread {
+
+		/** The first environment in the share **/
+		private int from;
+		/** One past the last environment in the share **/
+		private int to;
+		/** The last step this worker has done **/
+		private long done = 0;
+
+		/**
+		 * Create a worker
+		 *
+		 * @param from The first environment in the share
+		 * @param to One past the last environment in the share
+		 */
+		public Worker(int from, int to) {
+
+			super("Environment " + from + "-" + (to - 1));
+			setDaemon(true);
+
+			this.from = from;
+			this.to = to;
+		}
+
+		/**
+		 * Wait for each step and step the share
+		 *
+		 */
+		public void run() {
+
+			while(true) {
+
+				while(generation == done) {
+					if(closed) {
+						return;
+					}
+					LockSupport.park(this);
+				}
+
+				done = generation;
+
+				//Whatever happens the caller has to be told this share is
+				//done, or it would wait forever
+
+				try {
+					step(from, to);
+				} catch(Throwable e) {
+					failure.compareAndSet(null, e);
+				} finally {
+					if(remaining.decrementAndGet() == 0) {
+						LockSupport.unpark(caller);
+					}
+				}
+			}
+		}
+	}
+}